@@ -41,9 +41,12 @@ public final class DonutAuctionsPlugin extends JavaPlugin {
         filterManager.reload();
 
         auctionService = new AuctionService(this);
+        auctionService.useCategories(filterManager.categories());
         auctionService.load();
+        auctionService.reconcileSettlements(economyHook);
         auctionService.startAutoSave();
         auctionService.startDynamicRepricing();
+        auctionService.startExpiry();
         menuService = new AuctionMenuService(this, languageManager, auctionService, economyHook, ultimateShopHook, filterManager);
 
         AhCommand ahCommand = new AhCommand(this, languageManager, auctionService, menuService, economyHook, ultimateShopHook);
@@ -73,6 +76,7 @@ public final class DonutAuctionsPlugin extends JavaPlugin {
         economyHook.initialize();
         ultimateShopHook.reload();
         filterManager.reload();
+        auctionService.useCategories(filterManager.categories());
         auctionService.reloadRuntimeSchedulers();
         menuService.shutdown();
     }
@@ -0,0 +1,264 @@
+package com.siberanka.donutauctions.auction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Frame layout: [int length][body][int crc32c(body)]. A checkpoint rotates to the next generation and
+// stores it in the snapshot, so startup only replays segments written after that snapshot.
+public final class AuctionJournal {
+
+    public interface Replay {
+        void put(AuctionListing listing);
+
+        void remove(UUID listingId);
+
+        void price(UUID listingId, double price);
+
+        void sale(TransactionRecord transaction);
+    }
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_PRICE = 3;
+    private static final byte TYPE_SALE = 4;
+    // Same as TYPE_PUT with the StoredItem header after the item bytes; TYPE_PUT is still replayed.
+    private static final byte TYPE_PUT_WITH_HEADER = 5;
+    private static final int MAX_FRAME_BYTES = 8 * 1024 * 1024;
+    private static final String PREFIX = "auction-journal.";
+    private static final String SUFFIX = ".log";
+    private static final Pattern SEGMENT = Pattern.compile(Pattern.quote(PREFIX) + "(\\d+)" + Pattern.quote(SUFFIX));
+
+    private final Path directory;
+    private FileChannel channel;
+    private long generation;
+    private long segmentBytes;
+
+    public AuctionJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    public synchronized void open(long minimumGeneration) throws IOException {
+        Files.createDirectories(directory);
+        long newest = segments().stream().mapToLong(Long::longValue).max().orElse(0L);
+        openSegment(Math.max(minimumGeneration, newest + 1));
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized long segmentBytes() {
+        return segmentBytes;
+    }
+
+    public synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    public void appendPut(AuctionListing listing) throws IOException {
+        append(TYPE_PUT_WITH_HEADER, out -> AuctionSnapshotCodec.writeListing(out, listing));
+    }
+
+    public void appendRemove(UUID listingId) throws IOException {
+        append(TYPE_REMOVE, out -> AuctionSnapshotCodec.writeUuid(out, listingId));
+    }
+
+    public void appendPrice(UUID listingId, double price) throws IOException {
+        append(TYPE_PRICE, out -> {
+            AuctionSnapshotCodec.writeUuid(out, listingId);
+            out.writeDouble(price);
+        });
+    }
+
+    public void appendSale(TransactionRecord tx) throws IOException {
+        append(TYPE_SALE, out -> AuctionSnapshotCodec.writeTransaction(out, tx));
+    }
+
+    public synchronized void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    public synchronized long rotate() throws IOException {
+        long next = generation + 1;
+        closeChannel();
+        openSegment(next);
+        return next;
+    }
+
+    public synchronized void deleteBefore(long keepFromGeneration) {
+        for (long gen : segments()) {
+            if (gen < keepFromGeneration) {
+                try {
+                    Files.deleteIfExists(segmentPath(gen));
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    public synchronized int replay(long fromGeneration, Replay replay) {
+        int applied = 0;
+        List<Long> generations = segments();
+        generations.sort(Long::compare);
+        for (long gen : generations) {
+            if (gen < fromGeneration) {
+                continue;
+            }
+            applied += replaySegment(segmentPath(gen), replay);
+        }
+        return applied;
+    }
+
+    public synchronized void close() {
+        try {
+            force();
+        } catch (IOException ignored) {
+        }
+        closeChannel();
+    }
+
+    private void append(byte type, BodyWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            writer.write(out);
+        }
+        byte[] body = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+
+        ByteBuffer frame = ByteBuffer.allocate(body.length + 8);
+        frame.putInt(body.length).put(body).putInt((int) crc.getValue()).flip();
+        synchronized (this) {
+            if (channel == null) {
+                throw new IOException("journal is closed");
+            }
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            segmentBytes += body.length + 8L;
+        }
+    }
+
+    private int replaySegment(Path path, Replay replay) {
+        int applied = 0;
+        try (InputStream raw = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_FRAME_BYTES) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                int expected = in.readInt();
+                CRC32C crc = new CRC32C();
+                crc.update(body);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                if (apply(body, replay)) {
+                    applied++;
+                }
+            }
+        } catch (EOFException torn) {
+            // Last frame was only partially written before a crash.
+        } catch (IOException ignored) {
+        }
+        return applied;
+    }
+
+    private boolean apply(byte[] body, Replay replay) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            switch (in.readByte()) {
+                case TYPE_PUT, TYPE_PUT_WITH_HEADER -> {
+                    AuctionListing listing = AuctionSnapshotCodec.readListing(in, body[0] == TYPE_PUT_WITH_HEADER);
+                    if (listing == null) {
+                        return false;
+                    }
+                    replay.put(listing);
+                }
+                case TYPE_REMOVE -> replay.remove(AuctionSnapshotCodec.readUuid(in));
+                case TYPE_PRICE -> replay.price(AuctionSnapshotCodec.readUuid(in), in.readDouble());
+                case TYPE_SALE -> replay.sale(AuctionSnapshotCodec.readTransaction(in));
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
+    private void openSegment(long gen) throws IOException {
+        Path path = segmentPath(gen);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        generation = gen;
+        segmentBytes = channel.size();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException ignored) {
+        } finally {
+            channel = null;
+        }
+    }
+
+    private List<Long> segments() {
+        List<Long> out = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return out;
+        }
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.forEach(path -> {
+                Matcher matcher = SEGMENT.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    out.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return out;
+    }
+
+    private Path segmentPath(long gen) {
+        return directory.resolve(PREFIX + gen + SUFFIX);
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -5,16 +5,17 @@ import org.bukkit.inventory.ItemStack;
 import java.time.Instant;
 import java.util.UUID;
 
+// Immutable; the item stays serialized until itemStack() is called.
 public record AuctionListing(
         UUID id,
         UUID sellerUuid,
         String sellerName,
-        ItemStack item,
+        StoredItem item,
         double price,
         Instant createdAt,
         Instant expiresAt
 ) {
-    public AuctionListing copy() {
-        return new AuctionListing(id, sellerUuid, sellerName, item.clone(), price, createdAt, expiresAt);
+    public ItemStack itemStack() {
+        return item.materialize();
     }
 }
@@ -0,0 +1,28 @@
+package com.siberanka.donutauctions.auction;
+
+import java.util.UUID;
+
+// One page of the book as a menu or command wants to see it: optional search text, filter category
+// and seller, an order, and a 1-based page. A page past the end is served as the last page.
+public record AuctionQuery(String search, String category, UUID seller, SortMode sort, int page, int pageSize) {
+
+    public AuctionQuery {
+        search = search == null ? "" : search;
+        category = category == null ? "all" : category;
+        sort = sort == null ? SortMode.NEWEST : sort;
+        page = Math.max(1, page);
+        pageSize = Math.max(1, pageSize);
+    }
+
+    public static AuctionQuery browse(String search, String category, SortMode sort, int page, int pageSize) {
+        return new AuctionQuery(search, category, null, sort, page, pageSize);
+    }
+
+    public static AuctionQuery ofSeller(UUID seller, int page, int pageSize) {
+        return new AuctionQuery("", "all", seller, SortMode.NEWEST, page, pageSize);
+    }
+
+    int offset() {
+        return (page - 1) * pageSize;
+    }
+}
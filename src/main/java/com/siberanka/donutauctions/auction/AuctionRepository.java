@@ -0,0 +1,60 @@
+package com.siberanka.donutauctions.auction;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// Persistence backend behind AuctionService. Mutations are called under the service lock in the
+// order they happen; a checkpoint is prepared under that lock and committed after it is released.
+public interface AuctionRepository {
+
+    @FunctionalInterface
+    interface Checkpoint {
+        void commit() throws IOException;
+    }
+
+    String backend();
+
+    List<AuctionListing> load(ForkJoinPool pool, AuctionSnapshotCodec.Timings timings) throws IOException;
+
+    boolean hasData();
+
+    void putListing(AuctionListing listing) throws IOException;
+
+    void removeListing(UUID listingId) throws IOException;
+
+    void updatePrice(UUID listingId, double price) throws IOException;
+
+    void recordSale(TransactionRecord transaction) throws IOException;
+
+    void appendTransaction(TransactionRecord transaction) throws IOException;
+
+    int transactionCount(UUID player);
+
+    List<TransactionRecord> transactionPage(UUID player, int offset, int limit);
+
+    void forEachTransaction(Consumer<TransactionRecord> action);
+
+    void replaceListings(List<AuctionListing> listings) throws IOException;
+
+    // True when mutations are persisted as they happen and autosave only has to flush.
+    boolean isIncremental();
+
+    boolean checkpointDue();
+
+    void flush() throws IOException;
+
+    // Group commit: writes issued between beginBatch and commitBatch become durable together.
+    default void beginBatch() throws IOException {
+    }
+
+    default void commitBatch() throws IOException {
+        flush();
+    }
+
+    Checkpoint prepareCheckpoint(List<AuctionListing> listings) throws IOException;
+
+    void close();
+}
@@ -1,34 +1,40 @@
 package com.siberanka.donutauctions.auction;
 
 import com.siberanka.donutauctions.DonutAuctionsPlugin;
+import com.siberanka.donutauctions.filter.CategoryTable;
 import com.siberanka.donutauctions.hook.EconomyHook;
-import com.siberanka.donutauctions.util.AtomicFileUtil;
 import com.siberanka.donutauctions.util.SchedulerAdapter;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.function.Function;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
@@ -44,109 +50,217 @@ public final class AuctionService {
         }
     }
 
+    public record MigrationResult(int listings, long transactions) {
+    }
+
+    private static final int REPRICE_BATCH = 256;
+
     private final DonutAuctionsPlugin plugin;
-    private final ConcurrentMap<UUID, AuctionListing> listings = new ConcurrentHashMap<>();
-    private final List<TransactionRecord> transactions = new ArrayList<>();
+    private final ListingBook listings = new ListingBook();
     private final ConcurrentMap<String, Long> processedOperations = new ConcurrentHashMap<>();
 
-    private int autosaveTaskId = -1;
-    private Object foliaAutosaveTask;
-    private int dynamicRepriceTaskId = -1;
-    private Object foliaDynamicRepriceTask;
+    private SchedulerAdapter.Task autosaveTask;
+    private SchedulerAdapter.Task dynamicRepriceTask;
+    private SchedulerAdapter.Task expiryTask;
     private long operationTtlMillis = TimeUnit.MINUTES.toMillis(10);
-    private final Object mutex = new Object();
+    private final AuctionRepository repository;
+    private final GroupCommitWriter commitWriter;
+    private final ReclaimStore reclaimStore;
+    private final MarketStats marketStats;
+    private final SettlementLedger ledger;
+    private final ExecutorService settlementPool;
+    private final QueryCache queryCache = new QueryCache();
+    private final TransactionHistory history;
+    private volatile long modCount;
+    private volatile long savedModCount;
+    private volatile long flushedModCount;
+    private final Object saveLock = new Object();
 
     public AuctionService(DonutAuctionsPlugin plugin) {
         this.plugin = plugin;
+        this.repository = createRepository(plugin, plugin.getConfig().getString("storage.backend", "file"));
+        this.commitWriter = new GroupCommitWriter(repository, plugin.getLogger());
+        this.reclaimStore = new ReclaimStore(plugin.getDataFolder().toPath().resolve("reclaim.bin"));
+        this.marketStats = new MarketStats(plugin.getDataFolder().toPath().resolve("market.bin"));
+        this.ledger = new SettlementLedger(plugin.getDataFolder().toPath().resolve("settlements.bin"));
+        this.settlementPool = Executors.newFixedThreadPool(Math.max(1, plugin.getConfig().getInt("auction.settlement-threads", 2)), task -> {
+            Thread thread = new Thread(task, "DonutAuctions-Settlement");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.history = new TransactionHistory(repository);
     }
 
+    // Decoding runs outside the service lock on a dedicated pool; the finished book is staged in a
+    // private map and swapped in under the lock, so nothing observes a half-loaded auction house.
     public void load() {
-        File file = dataFile();
-        if (!file.exists()) {
-            return;
+        AuctionSnapshotCodec.Timings timings = new AuctionSnapshotCodec.Timings();
+        int threads = loadThreads();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<AuctionListing> loaded;
+        try {
+            loaded = repository.load(pool, timings);
+        } catch (IOException ex) {
+            plugin.getLogger().severe("Auction storage (" + repository.backend() + ") failed to load: " + ex.getClass().getSimpleName());
+            loaded = List.of();
+        } finally {
+            pool.shutdown();
         }
 
-        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
-        if (yaml.getInt("schema-version", 0) != 1 || !yaml.getBoolean("commit-marker", false)) {
-            var restored = AtomicFileUtil.restoreLatestBackup(file.toPath(), backupDir().toPath());
-            if (restored.isEmpty()) {
-                return;
+        try {
+            reclaimStore.load();
+        } catch (IOException ex) {
+            plugin.getLogger().severe("Reclaim store was damaged and has been moved aside: " + ex.getClass().getSimpleName());
+        }
+        try {
+            marketStats.load();
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Market statistics were damaged and have been moved aside: " + ex.getClass().getSimpleName());
+        }
+        Set<UUID> settling = new HashSet<>();
+        try {
+            ledger.load();
+            for (SettlementLedger.Entry entry : ledger.entries()) {
+                settling.add(entry.listingId());
             }
-            plugin.getLogger().warning("Recovered auction data from backup: " + restored.get().getFileName());
-            yaml = YamlConfiguration.loadConfiguration(file);
-            if (yaml.getInt("schema-version", 0) != 1 || !yaml.getBoolean("commit-marker", false)) {
-                return;
+        } catch (IOException ex) {
+            plugin.getLogger().severe("Settlement ledger was damaged and has been moved aside: " + ex.getClass().getSimpleName());
+        }
+
+        long indexStart = System.nanoTime();
+        Map<UUID, AuctionListing> book = new HashMap<>();
+        List<AuctionListing> expired = new ArrayList<>();
+        Instant now = Instant.now();
+        for (AuctionListing listing : loaded) {
+            // A listing with an interrupted purchase stays in the book until it is reconciled.
+            if (listing.expiresAt().isBefore(now) && !settling.contains(listing.id())) {
+                expired.add(listing);
+            } else {
+                book.put(listing.id(), listing);
             }
         }
+        long indexNanos = System.nanoTime() - indexStart;
 
-        synchronized (mutex) {
-            listings.clear();
-            transactions.clear();
-
-            ConfigurationSection listingsSection = yaml.getConfigurationSection("listings");
-            if (listingsSection != null) {
-                for (String key : listingsSection.getKeys(false)) {
-                    try {
-                        UUID id = UUID.fromString(key);
-                        ConfigurationSection section = listingsSection.getConfigurationSection(key);
-                        if (section == null) {
-                            continue;
-                        }
+        synchronized (this) {
+            listings.replaceAll(book.values());
+        }
+        // Listings that ran out while the server was down go to their sellers' reclaim store.
+        if (!expired.isEmpty()) {
+            for (AuctionListing listing : expired) {
+                reclaimStore.add(listing.sellerUuid(), listing.id(), listing.item());
+            }
+            persistRetired(expired);
+            plugin.getLogger().info("Returned " + expired.size() + " listings that expired while offline to their sellers.");
+        }
+        plugin.getLogger().info("Loaded " + book.size() + " listings from " + repository.backend() + " storage (read " + millis(timings.readNanos)
+                + " ms, parse " + millis(timings.parseNanos)
+                + " ms, item decode " + millis(timings.decodeNanos) + " ms on " + threads + " threads"
+                + ", index " + millis(indexNanos)
+                + " ms, journal replay " + millis(timings.replayNanos) + " ms).");
+        configureItemCache();
+        configureGroupCommit();
+    }
 
-                        ItemStack item = section.getItemStack("item");
-                        if (item == null || item.getType() == Material.AIR) {
-                            continue;
-                        }
+    private void configureItemCache() {
+        StoredItem.setCacheCapacity(plugin.getConfig().getInt("storage.item-cache-size", 1024));
+        queryCache.setCapacity(plugin.getConfig().getInt("auction.query-cache-size", 256));
+        history.configure(plugin.getConfig().getInt("auction.transactions-per-player", 90),
+                plugin.getConfig().getInt("auction.transactions-history-budget", 50_000));
+    }
 
-                        UUID seller = UUID.fromString(section.getString("seller-uuid", ""));
-                        AuctionListing listing = new AuctionListing(
-                                id,
-                                seller,
-                                section.getString("seller-name", "unknown"),
-                                item,
-                                section.getDouble("price", 0.0D),
-                                Instant.ofEpochMilli(section.getLong("created-at", System.currentTimeMillis())),
-                                Instant.ofEpochMilli(section.getLong("expires-at", System.currentTimeMillis()))
-                        );
-                        if (!listing.expiresAt().isBefore(Instant.now())) {
-                            listings.put(id, listing);
-                        }
-                    } catch (Exception ignored) {
-                    }
-                }
-            }
+    private void configureGroupCommit() {
+        if (plugin.getConfig().getBoolean("storage.group-commit.enabled", true)) {
+            commitWriter.start(plugin.getConfig().getLong("storage.group-commit.interval-ms", 5L));
+        } else {
+            commitWriter.stop();
+        }
+    }
+
+    public GroupCommitWriter.Stats groupCommitStats() {
+        return commitWriter.stats();
+    }
 
-            List<Map<?, ?>> txList = yaml.getMapList("transactions");
-            for (Map<?, ?> row : txList) {
+    public String storageBackend() {
+        return repository.backend();
+    }
+
+    public int listingCount() {
+        return listings.size();
+    }
+
+    // One-shot copy of the live book and the full sale history into another backend. The target must
+    // be empty; this server keeps using the current backend until storage.backend is switched.
+    public MigrationResult migrateTo(String backend) throws IOException {
+        if (backend.equalsIgnoreCase(repository.backend())) {
+            throw new IOException("already using " + backend + " storage");
+        }
+        List<AuctionListing> book;
+        synchronized (this) {
+            commitWriter.awaitIdle();
+            book = listings.snapshot();
+        }
+        AuctionRepository target = createRepository(plugin, backend);
+        ForkJoinPool pool = new ForkJoinPool(loadThreads());
+        try {
+            target.load(pool, new AuctionSnapshotCodec.Timings());
+            if (target.hasData()) {
+                throw new IOException(backend + " storage already contains data");
+            }
+            // One batch for the whole copy: SQLite commits (and syncs) once instead of per row, and a
+            // failed copy is rolled back when the target closes without committing.
+            target.beginBatch();
+            long[] copied = {0L};
+            IOException[] failure = {null};
+            repository.forEachTransaction(tx -> {
+                if (failure[0] != null) {
+                    return;
+                }
                 try {
-                    TransactionRecord tx = new TransactionRecord(
-                            UUID.fromString(String.valueOf(row.get("auction-id"))),
-                            UUID.fromString(String.valueOf(row.get("buyer"))),
-                            String.valueOf(row.get("buyer-name")),
-                            UUID.fromString(String.valueOf(row.get("seller"))),
-                            String.valueOf(row.get("seller-name")),
-                            Double.parseDouble(String.valueOf(row.get("price"))),
-                            Instant.ofEpochMilli(Long.parseLong(String.valueOf(row.get("at"))))
-                    );
-                    transactions.add(tx);
-                } catch (Exception ignored) {
+                    target.appendTransaction(tx);
+                    copied[0]++;
+                } catch (IOException ex) {
+                    failure[0] = ex;
                 }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
             }
+            target.replaceListings(book);
+            target.commitBatch();
+            return new MigrationResult(book.size(), copied[0]);
+        } finally {
+            pool.shutdown();
+            target.close();
+        }
+    }
+
+    static AuctionRepository createRepository(DonutAuctionsPlugin plugin, String backend) {
+        if ("sqlite".equalsIgnoreCase(backend)) {
+            return new SqliteAuctionRepository(plugin);
         }
+        return new FileAuctionRepository(plugin);
+    }
+
+    private int loadThreads() {
+        int configured = plugin.getConfig().getInt("storage.load-threads", 0);
+        int available = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(available, configured > 0 ? configured : available - 1));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
     public void startAutoSave() {
-        if (autosaveTaskId != -1 || foliaAutosaveTask != null) {
+        if (autosaveTask != null) {
             return;
         }
         long period = Math.max(20L, plugin.getConfig().getLong("storage.autosave-ticks", 1200L));
-        if (!scheduleWithFoliaAsync(period)) {
-            autosaveTaskId = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::saveSafely, period, period).getTaskId();
-        }
+        autosaveTask = SchedulerAdapter.runAsyncTimer(plugin, this::autosaveSafely, period, period);
     }
 
     public void startDynamicRepricing() {
-        if (dynamicRepriceTaskId != -1 || foliaDynamicRepriceTask != null) {
+        if (dynamicRepriceTask != null) {
             return;
         }
         if (!shouldUseDynamicRepricing()) {
@@ -157,40 +271,53 @@ public final class AuctionService {
         }
 
         long periodTicks = Math.max(20L, dynamicRepriceIntervalSeconds() * 20L);
-        if (!scheduleDynamicWithFoliaAsync(periodTicks)) {
-            dynamicRepriceTaskId = Bukkit.getScheduler().runTaskTimerAsynchronously(
-                    plugin,
-                    () -> SchedulerAdapter.runSync(plugin, this::refreshAllListingPricesSafe),
-                    periodTicks,
-                    periodTicks
-            ).getTaskId();
+        dynamicRepriceTask = SchedulerAdapter.runSyncTimer(plugin, this::refreshAllListingPricesSafe, periodTicks, periodTicks);
+    }
+
+    public void startExpiry() {
+        if (expiryTask != null) {
+            return;
         }
+        long period = Math.max(1L, plugin.getConfig().getLong("auction.expiry.interval-ticks", 20L));
+        expiryTask = SchedulerAdapter.runAsyncTimer(plugin, this::expireDueListingsSafely, period, period);
     }
 
     public void shutdown() {
-        cancelFoliaAutosave();
-        if (autosaveTaskId != -1) {
-            Bukkit.getScheduler().cancelTask(autosaveTaskId);
-            autosaveTaskId = -1;
-        }
+        cancelAutosave();
         cancelDynamicReprice();
+        cancelExpiry();
+        // Settlements already running finish and queue their sales; the ledger covers the rest.
+        settlementPool.shutdown();
+        try {
+            settlementPool.awaitTermination(10L, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        commitWriter.stop();
         saveSafely();
-        synchronized (mutex) {
+        try {
+            reclaimStore.save();
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Reclaim store save failed safely: " + ex.getClass().getSimpleName());
+        }
+        saveMarketStatsSafely();
+        ledger.close();
+        repository.close();
+        synchronized (this) {
             listings.clear();
-            transactions.clear();
         }
         processedOperations.clear();
     }
 
     public void reloadRuntimeSchedulers() {
-        cancelFoliaAutosave();
-        if (autosaveTaskId != -1) {
-            Bukkit.getScheduler().cancelTask(autosaveTaskId);
-            autosaveTaskId = -1;
-        }
+        cancelAutosave();
         cancelDynamicReprice();
+        cancelExpiry();
         startAutoSave();
         startDynamicRepricing();
+        startExpiry();
+        configureItemCache();
+        configureGroupCommit();
     }
 
     public synchronized Optional<AuctionListing> createListing(Player seller, ItemStack item, double price) {
@@ -209,10 +336,7 @@ public final class AuctionService {
                 "auction.limits.max-active-per-player",
                 plugin.getConfig().getInt("auction.max-listings-per-player", 20)
         );
-        long current = listings.values().stream()
-                .filter(listing -> listing.sellerUuid().equals(seller.getUniqueId()))
-                .count();
-        if (current >= max) {
+        if (listings.countBySeller(seller.getUniqueId()) >= max) {
             return Optional.empty();
         }
 
@@ -224,72 +348,292 @@ public final class AuctionService {
                 UUID.randomUUID(),
                 seller.getUniqueId(),
                 seller.getName(),
-                item.clone(),
+                StoredItem.of(item),
                 normalizedPrice,
                 Instant.now(),
                 Instant.now().plus(Duration.ofHours(durationHours))
         );
-        listings.put(listing.id(), listing);
+        listings.put(listing);
+        recordMutation(() -> repository.putListing(listing));
         return Optional.of(listing);
     }
 
-    public synchronized PurchaseResult purchase(UUID listingId, Player buyer, EconomyHook economy, String operationId) {
+    // Only the caller that moves the listing from ACTIVE to RESERVED goes on to settle it. Checks
+    // that need no economy run on the calling thread; the Vault calls then run on the settlement
+    // pool, each stage recorded in the ledger first, so a slow economy never holds up a region
+    // thread or the service lock. The future completes on a settlement thread.
+    public CompletableFuture<PurchaseResult> purchase(UUID listingId, Player buyer, EconomyHook economy, String operationId) {
         if (operationSeen(operationId)) {
-            return PurchaseResult.fail("messages.try-again");
+            return CompletableFuture.completedFuture(PurchaseResult.fail("messages.try-again"));
+        }
+        if (!listings.claim(listingId)) {
+            return CompletableFuture.completedFuture(PurchaseResult.fail(
+                    listings.state(listingId) == null ? "messages.listing-not-found" : "messages.try-again"));
+        }
+
+        AuctionListing listing;
+        PurchaseResult rejected;
+        try {
+            if (shouldRefreshBeforePurchase() && plugin.ultimateShopHook().isActive()) {
+                refreshListingPriceForPurchase(listingId, buyer);
+            }
+            listing = listings.get(listingId);
+            rejected = checkPurchase(listing, buyer, economy);
+        } catch (RuntimeException ex) {
+            listings.release(listingId);
+            throw ex;
+        }
+        if (rejected != null) {
+            listings.release(listingId);
+            return CompletableFuture.completedFuture(rejected);
         }
 
-        if (shouldRefreshBeforePurchase() && plugin.ultimateShopHook().isActive()) {
-            refreshListingPriceForPurchase(listingId, buyer);
+        UUID buyerId = buyer.getUniqueId();
+        String buyerName = buyer.getName();
+        CompletableFuture<PurchaseResult> settled;
+        try {
+            settled = CompletableFuture.supplyAsync(() -> settlePurchase(listing, buyerId, buyerName, economy), settlementPool);
+        } catch (RejectedExecutionException ex) {
+            listings.release(listingId);
+            return CompletableFuture.completedFuture(PurchaseResult.fail("messages.try-again"));
         }
+        return settled.thenApply(result -> {
+            if (result.success()) {
+                history.record(result.transaction());
+                AuctionListing sold = result.listing();
+                marketStats.record(sold.item().material(), sold.item().enchants(), sold.item().amount(), sold.price(), result.transaction().at());
+                markOperation(operationId);
+            }
+            return result;
+        });
+    }
 
-        AuctionListing listing = listings.get(listingId);
+    // Null when the purchase may go ahead.
+    private PurchaseResult checkPurchase(AuctionListing listing, Player buyer, EconomyHook economy) {
         if (listing == null || listing.expiresAt().isBefore(Instant.now())) {
-            listings.remove(listingId);
+            // An expired listing that the expiry task has not reached yet is left for it to retire.
             return PurchaseResult.fail("messages.listing-not-found");
         }
-
         if (listing.sellerUuid().equals(buyer.getUniqueId())) {
             return PurchaseResult.fail("messages.cannot-buy-own-item");
         }
+        // Decode before any money moves, so a listing whose stored item is unreadable cannot be sold.
+        if (listing.itemStack() == null) {
+            plugin.getLogger().warning("Listing " + listing.id() + " has an undecodable item; purchase refused.");
+            return PurchaseResult.fail("messages.try-again");
+        }
         if (!economy.isReady()) {
             return PurchaseResult.fail("messages.vault-required");
         }
-        if (!economy.has(buyer, listing.price())) {
-            return PurchaseResult.fail("messages.not-enough-money");
+        return null;
+    }
+
+    // Runs on the settlement pool while the caller holds the reservation. Every way out either
+    // finalizes the sale or puts the money and the listing back.
+    private PurchaseResult settlePurchase(AuctionListing listing, UUID buyerId, String buyerName, EconomyHook economy) {
+        UUID listingId = listing.id();
+        double price = listing.price();
+        OfflinePlayer buyer = Bukkit.getOfflinePlayer(buyerId);
+        SettlementLedger.Entry entry = new SettlementLedger.Entry(listingId, buyerId, buyerName, listing.sellerUuid(), price,
+                SettlementLedger.Stage.RESERVED);
+        if (!writeLedger(entry)) {
+            listings.release(listingId);
+            return PurchaseResult.fail("messages.try-again");
         }
 
-        if (!economy.withdraw(buyer, listing.price())) {
+        if (!economy.has(buyer, price) || !economy.withdraw(buyer, price)) {
+            forgetSettlement(listingId, false);
+            listings.release(listingId);
             return PurchaseResult.fail("messages.not-enough-money");
         }
+        if (!writeLedger(entry.advance(SettlementLedger.Stage.WITHDRAWN))) {
+            economy.deposit(buyer, price);
+            releaseRefunded(listingId);
+            return PurchaseResult.fail("messages.try-again");
+        }
 
         OfflinePlayer seller = Bukkit.getOfflinePlayer(listing.sellerUuid());
-        if (!economy.deposit(seller, listing.price())) {
-            economy.deposit(buyer, listing.price());
+        if (!economy.deposit(seller, price)) {
+            economy.deposit(buyer, price);
+            releaseRefunded(listingId);
             return PurchaseResult.fail("messages.economy-failed");
         }
+        if (!writeLedger(entry.advance(SettlementLedger.Stage.PAID))) {
+            economy.withdraw(seller, price);
+            economy.deposit(buyer, price);
+            releaseRefunded(listingId);
+            return PurchaseResult.fail("messages.try-again");
+        }
 
-        AuctionListing removed = listings.remove(listingId);
-        if (removed == null) {
-            economy.deposit(buyer, listing.price());
-            economy.withdraw(seller, listing.price());
+        TransactionRecord tx = null;
+        CompletableFuture<Void> durable = null;
+        synchronized (this) {
+            AuctionListing removed = listings.settle(listingId, ListingState.SOLD);
+            if (removed != null) {
+                TransactionRecord sale = new TransactionRecord(
+                        removed.id(),
+                        buyerId,
+                        buyerName,
+                        removed.sellerUuid(),
+                        removed.sellerName(),
+                        removed.price(),
+                        Instant.now()
+                );
+                durable = recordMutation(() -> repository.recordSale(sale));
+                tx = sale;
+            }
+        }
+        if (tx == null) {
+            // The book was cleared under us (shutdown or reload); undo the transfer.
+            economy.withdraw(seller, price);
+            economy.deposit(buyer, price);
+            forgetSettlement(listingId, true);
             return PurchaseResult.fail("messages.try-again");
         }
+        // The item is only handed over once the sale is on disk or the ledger says it was delivered;
+        // otherwise a restart would complete the sale again and deliver it a second time.
+        if (awaitDurable(durable)) {
+            forgetSettlement(listingId, false);
+            return PurchaseResult.ok(listing, tx);
+        }
+        if (writeLedger(entry.advance(SettlementLedger.Stage.DELIVERED))) {
+            // The next start records the sale without delivering anything.
+            return PurchaseResult.ok(listing, tx);
+        }
+        // The PAID entry stands, so the next start completes the sale and the item waits in /ah reclaim.
+        return PurchaseResult.fail("messages.purchase-pending");
+    }
 
-        TransactionRecord tx = new TransactionRecord(
-                removed.id(),
-                buyer.getUniqueId(),
-                buyer.getName(),
-                removed.sellerUuid(),
-                removed.sellerName(),
-                removed.price(),
-                Instant.now()
-        );
-        addTransaction(tx);
-        markOperation(operationId);
-        return PurchaseResult.ok(removed, tx);
+    private boolean awaitDurable(CompletableFuture<Void> durable) {
+        try {
+            durable.join();
+            return true;
+        } catch (CompletionException | CancellationException ex) {
+            return false;
+        }
     }
 
-    public synchronized boolean removeOwnListing(UUID listingId, UUID ownerUuid, String operationId) {
+    private boolean writeLedger(SettlementLedger.Entry entry) {
+        try {
+            ledger.put(entry);
+            return true;
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Settlement ledger write failed safely: " + ex.getClass().getSimpleName());
+            return false;
+        }
+    }
+
+    // A removal after money went back must reach the disk, or a restart would refund a second time.
+    private boolean forgetSettlement(UUID listingId, boolean refunded) {
+        try {
+            ledger.remove(listingId, refunded);
+            return true;
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Settlement ledger write failed safely: " + ex.getClass().getSimpleName());
+            return false;
+        }
+    }
+
+    // The listing stays held until the ledger durably forgets the refunded purchase; when that
+    // fails here, the compaction at the next autosave or checkpoint finishes it and releases it.
+    private void releaseRefunded(UUID listingId) {
+        if (forgetSettlement(listingId, true)) {
+            listings.release(listingId);
+        }
+    }
+
+    // Purchases a crash interrupted: RESERVED ones moved no money, WITHDRAWN ones are refunded, and
+    // PAID or DELIVERED ones whose sale never reached storage are completed; only a PAID one still
+    // owes the buyer the item, which then waits in /ah reclaim. Entries stay for the next start, with
+    // their listings held back from buyers, while no economy is available.
+    public void reconcileSettlements(EconomyHook economy) {
+        List<SettlementLedger.Entry> open = ledger.entries();
+        if (open.isEmpty()) {
+            return;
+        }
+        if (!economy.isReady()) {
+            for (SettlementLedger.Entry entry : open) {
+                listings.claim(entry.listingId());
+            }
+            plugin.getLogger().warning(open.size() + " interrupted purchase(s) wait for an economy to be reconciled.");
+            return;
+        }
+        for (SettlementLedger.Entry entry : open) {
+            switch (entry.recovery(listings.get(entry.listingId()) != null)) {
+                case FORGET -> forgetSettlement(entry.listingId(), false);
+                case REFUND -> {
+                    if (economy.deposit(Bukkit.getOfflinePlayer(entry.buyer()), entry.price())) {
+                        if (!forgetSettlement(entry.listingId(), true)) {
+                            listings.claim(entry.listingId());
+                        }
+                        plugin.getLogger().info("Refunded " + entry.buyerName() + " for interrupted purchase of listing " + entry.listingId() + ".");
+                    } else {
+                        plugin.getLogger().warning("Refund for interrupted purchase of listing " + entry.listingId() + " failed; retrying next start.");
+                    }
+                }
+                case DELIVER_AND_COMPLETE -> completeInterruptedSale(entry, true);
+                case COMPLETE -> completeInterruptedSale(entry, false);
+            }
+        }
+    }
+
+    // The listing stays held in the book, and so in every checkpoint, until the sale is recorded. The
+    // item reaches the reclaim store before the entry says DELIVERED, and the entry only says
+    // DELIVERED before the listing is gone from storage, so a crash at any point neither loses the
+    // item nor hands it out twice.
+    private void completeInterruptedSale(SettlementLedger.Entry entry, boolean deliver) {
+        UUID listingId = entry.listingId();
+        listings.claim(listingId);
+        AuctionListing listing = listings.get(listingId);
+        if (listing == null) {
+            return;
+        }
+        if (deliver) {
+            // Already there when an earlier start got this far; nobody can have claimed it since.
+            reclaimStore.add(entry.buyer(), listingId, listing.item());
+            if (!saveReclaimSafely()) {
+                plugin.getLogger().warning("Interrupted purchase of listing " + listingId + " could not be delivered; retrying next start.");
+                return;
+            }
+            if (!writeLedger(entry.advance(SettlementLedger.Stage.DELIVERED))) {
+                reclaimStore.take(entry.buyer(), listingId);
+                saveReclaimSafely();
+                plugin.getLogger().warning("Interrupted purchase of listing " + listingId + " could not be delivered; retrying next start.");
+                return;
+            }
+        }
+
+        TransactionRecord tx = null;
+        CompletableFuture<Void> durable = null;
+        synchronized (this) {
+            AuctionListing removed = listings.settle(listingId, ListingState.SOLD);
+            if (removed != null) {
+                TransactionRecord sale = new TransactionRecord(listingId, entry.buyer(), entry.buyerName(),
+                        removed.sellerUuid(), removed.sellerName(), entry.price(), Instant.now());
+                durable = recordMutation(() -> repository.recordSale(sale));
+                tx = sale;
+            }
+        }
+        if (tx == null) {
+            return;
+        }
+        history.record(tx);
+        marketStats.record(listing.item().material(), listing.item().enchants(), listing.item().amount(), entry.price(), tx.at());
+        if (awaitDurable(durable)) {
+            forgetSettlement(listingId, false);
+        }
+        plugin.getLogger().info("Completed interrupted purchase of listing " + listingId + " for " + entry.buyerName()
+                + (deliver ? "; the item waits in /ah reclaim." : "."));
+    }
+
+    // Items bought by a player who left before delivery wait in /ah reclaim.
+    public void holdForPickup(UUID player, AuctionListing listing) {
+        if (reclaimStore.add(player, listing.id(), listing.item())) {
+            SchedulerAdapter.runAsync(plugin, this::saveReclaimSafely);
+        }
+    }
+
+    public boolean removeOwnListing(UUID listingId, UUID ownerUuid, String operationId) {
         if (operationSeen(operationId)) {
             return false;
         }
@@ -297,111 +641,242 @@ public final class AuctionService {
         if (listing == null || !listing.sellerUuid().equals(ownerUuid)) {
             return false;
         }
-        AuctionListing removed = listings.remove(listingId);
-        if (removed == null) {
-            return false;
+        synchronized (this) {
+            // Fails while a buyer holds the listing.
+            if (listings.take(listingId, ListingState.CANCELLED) == null) {
+                return false;
+            }
+            recordMutation(() -> repository.removeListing(listingId));
         }
         markOperation(operationId);
         return true;
     }
 
-    public synchronized List<AuctionListing> activeListings(String query) {
-        cleanupExpired();
-        String search = query == null ? "" : query.toLowerCase(Locale.ROOT);
-        return listings.values().stream()
-                .filter(listing -> search.isBlank()
-                        || listing.item().getType().name().toLowerCase(Locale.ROOT).contains(search)
-                        || listing.sellerName().toLowerCase(Locale.ROOT).contains(search))
-                .sorted(Comparator.comparing(AuctionListing::createdAt).reversed())
-                .map(AuctionListing::copy)
-                .toList();
+    // Serves one page straight from the maintained indices without taking the service lock, so menu
+    // rendering never waits on purchases or saves. Only that page's listings are returned, and
+    // callers materialize items for the rows they render and nothing else. Search matches
+    // material, seller, display name and enchantment keys (e.g. "sharpness").
+    public ListingPage query(AuctionQuery query) {
+        long version = listings.version();
+        ListingPage page = queryCache.get(query, version);
+        if (page != null) {
+            return page;
+        }
+        page = runQuery(query, query.offset());
+        if (query.page() > page.maxPage()) {
+            // The book shrank since the caller's last page; serve the last one instead.
+            page = runQuery(query, (page.maxPage() - 1) * query.pageSize());
+        }
+        queryCache.put(query, version, page);
+        return page;
+    }
+
+    public double queryCacheHitRate() {
+        return queryCache.hitRate();
     }
 
-    public synchronized List<AuctionListing> myListings(UUID owner) {
-        cleanupExpired();
-        return listings.values().stream()
-                .filter(listing -> listing.sellerUuid().equals(owner))
-                .sorted(Comparator.comparing(AuctionListing::createdAt).reversed())
-                .map(AuctionListing::copy)
-                .toList();
+    private ListingPage runQuery(AuctionQuery query, int offset) {
+        if (query.seller() != null) {
+            return listings.sellerPage(query.seller(), query.sort(), offset, query.pageSize());
+        }
+        return listings.page(query.sort(), query.category(), query.search(), offset, query.pageSize());
+    }
+
+    public void useCategories(CategoryTable table) {
+        listings.useCategories(table);
     }
 
-    public synchronized Optional<AuctionListing> get(UUID id) {
-        cleanupExpired();
+    public Optional<AuctionListing> get(UUID id) {
         AuctionListing listing = listings.get(id);
-        return listing == null ? Optional.empty() : Optional.of(listing.copy());
+        return Optional.ofNullable(listing);
     }
 
     public synchronized Optional<AuctionListing> remove(UUID id) {
-        AuctionListing removed = listings.remove(id);
-        return removed == null ? Optional.empty() : Optional.of(removed.copy());
+        AuctionListing removed = listings.take(id, ListingState.CANCELLED);
+        if (removed != null) {
+            recordMutation(() -> repository.removeListing(id));
+        }
+        return Optional.ofNullable(removed);
     }
 
-    public synchronized void addTransaction(TransactionRecord record) {
-        transactions.add(0, record);
-        int max = plugin.getConfig().getInt("auction.transactions-max", 200);
-        if (transactions.size() > max) {
-            transactions.subList(max, transactions.size()).clear();
+    // Both are served from the player's in-memory ring; only pages older than it reach storage.
+    public int transactionCount(UUID player) {
+        return history.count(player);
+    }
+
+    public List<TransactionRecord> transactionPage(UUID player, int offset, int limit) {
+        return history.page(player, offset, limit);
+    }
+
+    public MarketStats.Window marketWindow() {
+        String raw = plugin.getConfig().getString("auction.market.window", "day");
+        try {
+            return MarketStats.Window.valueOf(raw.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return MarketStats.Window.DAY;
         }
     }
 
-    public synchronized List<TransactionRecord> transactionsFor(UUID player) {
-        return transactions.stream()
-                .filter(record -> record.buyer().equals(player) || record.seller().equals(player))
-                .toList();
+    // Going rate of the same material with the same enchantments over the configured window.
+    public Optional<MarketStats.Rate> marketRate(StoredItem item) {
+        return marketStats.rate(item.material(), item.enchants(), marketWindow(), Instant.now());
+    }
+
+    public Optional<MarketStats.Rate> marketRate(ItemStack item) {
+        StoredItem.Header header = StoredItem.header(item);
+        return marketStats.rate(header.material(), header.enchants(), marketWindow(), Instant.now());
     }
 
-    public synchronized int maxSearchLength() {
+    public int maxSearchLength() {
         return Math.max(8, plugin.getConfig().getInt("auction.max-search-length", 32));
     }
 
-    private synchronized void cleanupExpired() {
-        Instant now = Instant.now();
-        listings.entrySet().removeIf(entry -> entry.getValue().expiresAt().isBefore(now));
+    public List<ReclaimStore.Entry> reclaimable(UUID seller) {
+        return reclaimStore.entries(seller);
     }
 
-    private void saveSafely() {
+    public int reclaimableCount(UUID seller) {
+        return reclaimStore.count(seller);
+    }
+
+    // Removes one claimed item from the store; false if it was already taken.
+    public boolean claimReclaimed(UUID seller, UUID listingId) {
+        if (!reclaimStore.take(seller, listingId)) {
+            return false;
+        }
+        SchedulerAdapter.runAsync(plugin, this::saveReclaimSafely);
+        return true;
+    }
+
+    private void expireDueListingsSafely() {
+        try {
+            List<AuctionListing> retired = retireDue(Math.max(1, plugin.getConfig().getInt("auction.expiry.batch-size", 256)));
+            if (!retired.isEmpty()) {
+                persistRetired(retired);
+            }
+        } catch (Exception ex) {
+            plugin.getLogger().warning("Listing expiry failed safely: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    // Only the listings that are actually due are touched, read from the expiry index.
+    private synchronized List<AuctionListing> retireDue(int max) {
+        List<AuctionListing> retired = new ArrayList<>();
+        for (AuctionListing listing : listings.due(Instant.now(), max)) {
+            // A listing a buyer holds right now is left to that purchase.
+            if (listings.take(listing.id(), ListingState.CANCELLED) != null) {
+                reclaimStore.add(listing.sellerUuid(), listing.id(), listing.item());
+                retired.add(listing);
+            }
+        }
+        return retired;
+    }
+
+    // The reclaim store is made durable before the removals are queued, so a crash in between
+    // leaves the listing in storage, where the next load retires it again under the same id.
+    private void persistRetired(List<AuctionListing> retired) {
+        try {
+            reclaimStore.save();
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Reclaim store save failed safely: " + ex.getClass().getSimpleName());
+            return;
+        }
+        synchronized (this) {
+            for (AuctionListing listing : retired) {
+                recordMutation(() -> repository.removeListing(listing.id()));
+            }
+        }
+    }
+
+    private boolean saveReclaimSafely() {
+        try {
+            reclaimStore.save();
+            return true;
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Reclaim store save failed safely: " + ex.getClass().getSimpleName());
+            return false;
+        }
+    }
+
+    private void autosaveSafely() {
         try {
+            // Market stats keep their own dirty flag, so this writes nothing unless a sale was recorded.
+            saveMarketStatsSafely();
+            compactLedgerSafely(false);
+            if (!isDirty()) {
+                return;
+            }
+            if (repository.isIncremental() && !repository.checkpointDue()) {
+                long current = modCount;
+                if (current != flushedModCount && !commitWriter.isRunning()) {
+                    repository.flush();
+                    flushedModCount = current;
+                }
+                return;
+            }
             saveNow();
         } catch (Exception ex) {
             plugin.getLogger().warning("Auction data save failed safely: " + ex.getClass().getSimpleName());
         }
     }
 
-    private synchronized void saveNow() throws IOException {
-        YamlConfiguration yaml = new YamlConfiguration();
-        yaml.set("schema-version", 1);
-        yaml.set("updated-at", System.currentTimeMillis());
+    private void saveSafely() {
+        try {
+            if (isDirty()) {
+                saveNow();
+            }
+        } catch (Exception ex) {
+            plugin.getLogger().warning("Auction data save failed safely: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    private boolean isDirty() {
+        return repository.checkpointDue() || modCount != savedModCount;
+    }
 
-        for (Map.Entry<UUID, AuctionListing> entry : listings.entrySet()) {
-            String base = "listings." + entry.getKey();
-            AuctionListing listing = entry.getValue();
-            yaml.set(base + ".seller-uuid", listing.sellerUuid().toString());
-            yaml.set(base + ".seller-name", listing.sellerName());
-            yaml.set(base + ".item", listing.item());
-            yaml.set(base + ".price", listing.price());
-            yaml.set(base + ".created-at", listing.createdAt().toEpochMilli());
-            yaml.set(base + ".expires-at", listing.expiresAt().toEpochMilli());
+    private void saveNow() throws IOException {
+        synchronized (saveLock) {
+            // Retired listings leave the book before their items are durable in the reclaim store.
+            reclaimStore.save();
+            PendingCheckpoint pending = prepareCheckpoint();
+            pending.checkpoint().commit();
+            savedModCount = pending.modCount();
+            flushedModCount = pending.modCount();
         }
+        saveMarketStatsSafely();
+        compactLedgerSafely(true);
+    }
 
-        List<Map<String, Object>> serializedTx = new ArrayList<>();
-        for (TransactionRecord tx : transactions) {
-            Map<String, Object> row = new HashMap<>();
-            row.put("auction-id", tx.auctionId().toString());
-            row.put("buyer", tx.buyer().toString());
-            row.put("buyer-name", tx.buyerName());
-            row.put("seller", tx.seller().toString());
-            row.put("seller-name", tx.sellerName());
-            row.put("price", tx.price());
-            row.put("at", tx.at().toEpochMilli());
-            serializedTx.add(row);
+    // Checkpoints always shrink the settlement log; autosaves only once it has grown or a durable
+    // removal is still pending.
+    private void compactLedgerSafely(boolean checkpoint) {
+        try {
+            for (UUID listingId : checkpoint ? ledger.compact() : ledger.compactIfLarge()) {
+                listings.release(listingId);
+            }
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Settlement ledger compaction failed safely: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    private void saveMarketStatsSafely() {
+        try {
+            marketStats.save();
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Market statistics save failed safely: " + ex.getClass().getSimpleName());
         }
-        yaml.set("transactions", serializedTx);
-        yaml.set("commit-marker", true);
+    }
+
+    // Only reference copies are taken under the monitor; listing items are never mutated in place,
+    // so encoding and disk I/O can run after the lock is released.
+    private synchronized PendingCheckpoint prepareCheckpoint() throws IOException {
+        commitWriter.awaitIdle();
+        return new PendingCheckpoint(modCount, repository.prepareCheckpoint(listings.snapshot()));
+    }
 
-        File file = dataFile();
-        AtomicFileUtil.rotateBackups(file.toPath(), backupDir().toPath(), Math.max(2, plugin.getConfig().getInt("storage.backup-keep", 5)));
-        AtomicFileUtil.saveYamlAtomically(file.toPath(), yaml);
+    private CompletableFuture<Void> recordMutation(GroupCommitWriter.Write write) {
+        modCount++;
+        return commitWriter.submit(write);
     }
 
     private boolean operationSeen(String key) {
@@ -418,110 +893,24 @@ public final class AuctionService {
         processedOperations.entrySet().removeIf(e -> now - e.getValue() > operationTtlMillis);
     }
 
-    private File dataFile() {
-        return new File(plugin.getDataFolder(), "auction-data.yml");
-    }
-
-    private File backupDir() {
-        return new File(plugin.getDataFolder(), "backups");
-    }
-
-    @SuppressWarnings("unchecked")
-    private boolean scheduleWithFoliaAsync(long periodTicks) {
-        try {
-            Object asyncScheduler = Bukkit.getServer().getClass().getMethod("getAsyncScheduler").invoke(Bukkit.getServer());
-            long periodMillis = Math.max(50L, periodTicks * 50L);
-            Consumer<Object> consumer = ignored -> saveSafely();
-
-            try {
-                Object task = asyncScheduler.getClass().getMethod(
-                                "runAtFixedRate",
-                                org.bukkit.plugin.Plugin.class,
-                                Consumer.class,
-                                long.class,
-                                long.class,
-                                TimeUnit.class
-                        )
-                        .invoke(asyncScheduler, plugin, consumer, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
-                foliaAutosaveTask = task;
-                return true;
-            } catch (NoSuchMethodException ignored) {
-                Object task = asyncScheduler.getClass().getMethod(
-                                "runAtFixedRate",
-                                org.bukkit.plugin.Plugin.class,
-                                Consumer.class,
-                                Duration.class,
-                                Duration.class
-                        )
-                        .invoke(asyncScheduler, plugin, consumer, Duration.ofMillis(periodMillis), Duration.ofMillis(periodMillis));
-                foliaAutosaveTask = task;
-                return true;
-            }
-        } catch (Throwable ignored) {
-            return false;
+    private void cancelAutosave() {
+        if (autosaveTask != null) {
+            autosaveTask.cancel();
+            autosaveTask = null;
         }
     }
 
-    private void cancelFoliaAutosave() {
-        if (foliaAutosaveTask == null) {
-            return;
-        }
-        try {
-            foliaAutosaveTask.getClass().getMethod("cancel").invoke(foliaAutosaveTask);
-        } catch (Throwable ignored) {
-        } finally {
-            foliaAutosaveTask = null;
+    private void cancelExpiry() {
+        if (expiryTask != null) {
+            expiryTask.cancel();
+            expiryTask = null;
         }
     }
 
     private void cancelDynamicReprice() {
-        if (dynamicRepriceTaskId != -1) {
-            Bukkit.getScheduler().cancelTask(dynamicRepriceTaskId);
-            dynamicRepriceTaskId = -1;
-        }
-        if (foliaDynamicRepriceTask != null) {
-            try {
-                foliaDynamicRepriceTask.getClass().getMethod("cancel").invoke(foliaDynamicRepriceTask);
-            } catch (Throwable ignored) {
-            } finally {
-                foliaDynamicRepriceTask = null;
-            }
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private boolean scheduleDynamicWithFoliaAsync(long periodTicks) {
-        try {
-            Object asyncScheduler = Bukkit.getServer().getClass().getMethod("getAsyncScheduler").invoke(Bukkit.getServer());
-            long periodMillis = Math.max(50L, periodTicks * 50L);
-            Consumer<Object> consumer = ignored -> SchedulerAdapter.runSync(plugin, this::refreshAllListingPricesSafe);
-
-            try {
-                Object task = asyncScheduler.getClass().getMethod(
-                                "runAtFixedRate",
-                                org.bukkit.plugin.Plugin.class,
-                                Consumer.class,
-                                long.class,
-                                long.class,
-                                TimeUnit.class
-                        )
-                        .invoke(asyncScheduler, plugin, consumer, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
-                foliaDynamicRepriceTask = task;
-                return true;
-            } catch (NoSuchMethodException ignored) {
-                Object task = asyncScheduler.getClass().getMethod(
-                                "runAtFixedRate",
-                                org.bukkit.plugin.Plugin.class,
-                                Consumer.class,
-                                Duration.class,
-                                Duration.class
-                        )
-                        .invoke(asyncScheduler, plugin, consumer, Duration.ofMillis(periodMillis), Duration.ofMillis(periodMillis));
-                foliaDynamicRepriceTask = task;
-                return true;
-            }
-        } catch (Throwable ignored) {
-            return false;
+        if (dynamicRepriceTask != null) {
+            dynamicRepriceTask.cancel();
+            dynamicRepriceTask = null;
         }
     }
 
@@ -537,12 +926,17 @@ public final class AuctionService {
         return plugin.getConfig().getBoolean("ultimateshop.dynamic-repricing.refresh-before-purchase", true);
     }
 
-    private synchronized void refreshListingPriceForPurchase(UUID listingId, Player buyer) {
+    // Called while the buyer holds the reservation, so nothing else replaces the listing meanwhile.
+    private void refreshListingPriceForPurchase(UUID listingId, Player buyer) {
         AuctionListing listing = listings.get(listingId);
         if (listing == null) {
             return;
         }
-        double newPrice = plugin.ultimateShopHook().suggestAuctionPrice(listing.item(), buyer).orElse(0D);
+        ItemStack item = listing.itemStack();
+        if (item == null) {
+            return;
+        }
+        double newPrice = plugin.ultimateShopHook().suggestAuctionPrice(item, buyer).orElse(0D);
         if (!Double.isFinite(newPrice) || newPrice <= 0D) {
             return;
         }
@@ -554,12 +948,15 @@ public final class AuctionService {
                 listing.id(),
                 listing.sellerUuid(),
                 listing.sellerName(),
-                listing.item().clone(),
+                listing.item(),
                 rounded,
                 listing.createdAt(),
                 listing.expiresAt()
         );
-        listings.put(listing.id(), updated);
+        synchronized (this) {
+            listings.put(updated);
+            recordMutation(() -> repository.updatePrice(listing.id(), rounded));
+        }
     }
 
     private void refreshAllListingPricesSafe() {
@@ -570,33 +967,83 @@ public final class AuctionService {
         }
     }
 
-    private synchronized void refreshAllListingPrices() {
+    // Decoding and shop lookups run outside the service monitor; only the price updates take it.
+    private void refreshAllListingPrices() {
         if (!shouldUseDynamicRepricing() || !plugin.ultimateShopHook().isActive()) {
             return;
         }
         if (listings.isEmpty()) {
             return;
         }
-        for (Map.Entry<UUID, AuctionListing> entry : listings.entrySet()) {
-            AuctionListing listing = entry.getValue();
-            double newPrice = plugin.ultimateShopHook().suggestAuctionPrice(listing.item()).orElse(0D);
-            if (!Double.isFinite(newPrice) || newPrice <= 0D) {
-                continue;
+        List<AuctionListing> book = new ArrayList<>(listings.values());
+        Map<UUID, Double> prices = priceByItem(book, this::suggestPrices);
+        synchronized (this) {
+            for (AuctionListing listing : book) {
+                double newPrice = prices.getOrDefault(listing.id(), 0D);
+                if (!Double.isFinite(newPrice) || newPrice <= 0D) {
+                    continue;
+                }
+                double rounded = roundCurrency(newPrice);
+                if (rounded <= 0D || Math.abs(rounded - listing.price()) < 0.0001D) {
+                    continue;
+                }
+                AuctionListing updated = new AuctionListing(
+                        listing.id(),
+                        listing.sellerUuid(),
+                        listing.sellerName(),
+                        listing.item(),
+                        rounded,
+                        listing.createdAt(),
+                        listing.expiresAt()
+                );
+                // Listings in the middle of a purchase keep the price the buyer is paying.
+                if (listings.putIfActive(updated)) {
+                    recordMutation(() -> repository.updatePrice(listing.id(), rounded));
+                }
             }
-            double rounded = roundCurrency(newPrice);
-            if (rounded <= 0D || Math.abs(rounded - listing.price()) < 0.0001D) {
-                continue;
+        }
+    }
+
+    // Undecodable items stay null, which the hook prices at 0.
+    private double[] suggestPrices(List<StoredItem> items) {
+        List<ItemStack> decoded = new ArrayList<>(items.size());
+        for (StoredItem item : items) {
+            decoded.add(item.materialize());
+        }
+        return plugin.ultimateShopHook().suggestAuctionPrices(decoded);
+    }
+
+    // Listings whose stored bytes are identical hold the same item, meta and amount included, so
+    // each distinct item is decoded and priced once, REPRICE_BATCH items per pricer call. The
+    // stored header is not enough for this: it leaves out lore, potion data, damage and the like.
+    static Map<UUID, Double> priceByItem(List<AuctionListing> book, Function<List<StoredItem>, double[]> pricer) {
+        Map<ByteBuffer, List<AuctionListing>> groups = new HashMap<>();
+        for (AuctionListing listing : book) {
+            groups.computeIfAbsent(ByteBuffer.wrap(listing.item().bytes()), bytes -> new ArrayList<>()).add(listing);
+        }
+        Map<UUID, Double> prices = new HashMap<>(book.size() * 2);
+        List<List<AuctionListing>> batch = new ArrayList<>(REPRICE_BATCH);
+        List<StoredItem> samples = new ArrayList<>(REPRICE_BATCH);
+        for (List<AuctionListing> group : groups.values()) {
+            batch.add(group);
+            samples.add(group.get(0).item());
+            if (batch.size() == REPRICE_BATCH) {
+                priceBatch(batch, pricer.apply(samples), prices);
+                batch.clear();
+                samples.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            priceBatch(batch, pricer.apply(samples), prices);
+        }
+        return prices;
+    }
+
+    private static void priceBatch(List<List<AuctionListing>> batch, double[] sampled, Map<UUID, Double> prices) {
+        for (int i = 0; i < batch.size(); i++) {
+            for (AuctionListing listing : batch.get(i)) {
+                prices.put(listing.id(), sampled[i]);
             }
-            AuctionListing updated = new AuctionListing(
-                    listing.id(),
-                    listing.sellerUuid(),
-                    listing.sellerName(),
-                    listing.item().clone(),
-                    rounded,
-                    listing.createdAt(),
-                    listing.expiresAt()
-            );
-            listings.put(listing.id(), updated);
         }
     }
 
@@ -634,4 +1081,7 @@ public final class AuctionService {
         }
         return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
     }
+
+    private record PendingCheckpoint(long modCount, AuctionRepository.Checkpoint checkpoint) {
+    }
 }
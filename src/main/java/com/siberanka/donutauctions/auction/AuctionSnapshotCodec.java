@@ -0,0 +1,450 @@
+package com.siberanka.donutauctions.auction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Schema 2+ layout: header (magic, schema, updated-at, journal generation), framed records
+// [sync][kind][length][body][crc32c(kind, body)], then a footer (end marker, listing and transaction
+// counts, crc32c of every byte before it). A record with a bad CRC is dropped on its own; broken
+// framing switches to a salvage scan that resumes at the next sync marker. Schema 1 files, which
+// have no per-record checksums, are still readable. Items are stored as ItemStack#serializeAsBytes;
+// schema 3 follows each item with its StoredItem header so loading never has to deserialize it.
+public final class AuctionSnapshotCodec {
+
+    public record Damage(List<UUID> droppedListings, int droppedRecords, boolean footerValid) {
+        public static final Damage NONE = new Damage(List.of(), 0, true);
+
+        public boolean isDamaged() {
+            return droppedRecords > 0 || !footerValid;
+        }
+    }
+
+    public record Snapshot(long journalGeneration, List<AuctionListing> listings, List<TransactionRecord> transactions, Damage damage) {
+        public Snapshot(long journalGeneration, List<AuctionListing> listings, List<TransactionRecord> transactions) {
+            this(journalGeneration, listings, transactions, Damage.NONE);
+        }
+    }
+
+    // Nanoseconds spent in each load phase, filled in by the codec and the repository.
+    public static final class Timings {
+        public long readNanos;
+        public long parseNanos;
+        public long decodeNanos;
+        public long replayNanos;
+    }
+
+    // Listings written before schema 3 carry no item header; only those are deserialized at load.
+    record PendingListing(UUID id, UUID seller, String sellerName, double price, Instant createdAt, Instant expiresAt,
+                          byte[] itemBytes, StoredItem.Header header) {
+        AuctionListing decode() {
+            StoredItem item = StoredItem.restore(itemBytes, header);
+            if (item == null) {
+                return null;
+            }
+            return new AuctionListing(id, seller, sellerName, item, price, createdAt, expiresAt);
+        }
+    }
+
+    public static final int SCHEMA_VERSION = 3;
+
+    private static final int MAGIC = 0x44415543;
+    private static final int SYNC = 0x52454331;
+    private static final int END_MARKER = 0x44454E44;
+    private static final byte KIND_LISTING = 1;
+    private static final byte KIND_TRANSACTION = 2;
+    private static final int HEADER_BYTES = 22;
+    private static final int FRAME_OVERHEAD = 13;
+    private static final int FOOTER_BYTES = 16;
+    private static final int MAX_RECORD_BYTES = 8 * 1024 * 1024;
+
+    private AuctionSnapshotCodec() {
+    }
+
+    public static void write(OutputStream target, Snapshot snapshot) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(target, new CRC32C());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        out.writeShort(SCHEMA_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(snapshot.journalGeneration());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        DataOutputStream record = new DataOutputStream(buffer);
+        for (AuctionListing listing : snapshot.listings()) {
+            buffer.reset();
+            writeListing(record, listing);
+            writeFrame(out, KIND_LISTING, buffer.toByteArray());
+        }
+        for (TransactionRecord tx : snapshot.transactions()) {
+            buffer.reset();
+            writeTransaction(record, tx);
+            writeFrame(out, KIND_TRANSACTION, buffer.toByteArray());
+        }
+
+        out.writeInt(END_MARKER);
+        out.writeInt(snapshot.listings().size());
+        out.writeInt(snapshot.transactions().size());
+        out.flush();
+        out.writeInt((int) checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    // Frames are streamed and checked first, then their fixed fields parsed, and only item blobs
+    // without a stored header - the expensive part - are deserialized in parallel on the given pool.
+    public static Snapshot read(Path file, ForkJoinPool pool, Timings timings) throws IOException {
+        long phase = System.nanoTime();
+        Frames frames;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            frames = readFrames(in);
+        } catch (FramingException damaged) {
+            frames = salvage(Files.readAllBytes(file));
+        }
+        timings.readNanos = System.nanoTime() - phase;
+
+        phase = System.nanoTime();
+        List<PendingListing> pending = new ArrayList<>(frames.listings.size());
+        boolean withHeader = frames.schema >= 3;
+        for (byte[] body : frames.listings) {
+            try {
+                pending.add(readPendingListing(new DataInputStream(new ByteArrayInputStream(body)), withHeader));
+            } catch (Exception ex) {
+                frames.dropListing(body);
+            }
+        }
+        List<TransactionRecord> transactions = new ArrayList<>(frames.transactions.size());
+        for (byte[] body : frames.transactions) {
+            try {
+                transactions.add(readTransaction(new DataInputStream(new ByteArrayInputStream(body))));
+            } catch (Exception ex) {
+                frames.droppedRecords++;
+            }
+        }
+        timings.parseNanos = System.nanoTime() - phase;
+
+        phase = System.nanoTime();
+        List<UUID> undecodable = new ArrayList<>();
+        List<AuctionListing> listings = decodeAll(pending, pool, undecodable);
+        frames.dropped.addAll(undecodable);
+        frames.droppedRecords += undecodable.size();
+        timings.decodeNanos = System.nanoTime() - phase;
+
+        Damage damage = frames.droppedRecords == 0 && frames.footerValid
+                ? Damage.NONE
+                : new Damage(List.copyOf(frames.dropped), frames.droppedRecords, frames.footerValid);
+        return new Snapshot(frames.journalGeneration, listings, transactions, damage);
+    }
+
+    static List<AuctionListing> decodeAll(List<PendingListing> pending, ForkJoinPool pool, List<UUID> failed) {
+        AuctionListing[] decoded = new AuctionListing[pending.size()];
+        boolean[] failures = new boolean[decoded.length];
+        pool.submit(() -> IntStream.range(0, decoded.length).parallel().forEach(i -> {
+            try {
+                decoded[i] = pending.get(i).decode();
+            } catch (Exception ex) {
+                failures[i] = true;
+            }
+        })).join();
+        List<AuctionListing> out = new ArrayList<>(decoded.length);
+        for (int i = 0; i < decoded.length; i++) {
+            if (decoded[i] != null) {
+                out.add(decoded[i]);
+            } else if (failures[i]) {
+                failed.add(pending.get(i).id());
+            }
+        }
+        return out;
+    }
+
+    private static Frames readFrames(InputStream source) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(source, new CRC32C());
+        DataInputStream in = new DataInputStream(checked);
+        Frames frames = new Frames();
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an auction snapshot");
+        }
+        int version = in.readUnsignedShort();
+        in.readLong();
+        frames.journalGeneration = in.readLong();
+        frames.schema = version;
+        if (version == 1) {
+            readSchemaOne(in, frames);
+            return frames;
+        }
+        if (version < 2 || version > SCHEMA_VERSION) {
+            throw new IOException("unsupported snapshot schema " + version);
+        }
+
+        try {
+            while (true) {
+                int marker = in.readInt();
+                if (marker == END_MARKER) {
+                    int listingCount = in.readInt();
+                    int txCount = in.readInt();
+                    int expected = (int) checked.getChecksum().getValue();
+                    frames.footerValid = in.readInt() == expected
+                            && listingCount == frames.listingFrames
+                            && txCount == frames.transactionFrames;
+                    return frames;
+                }
+                if (marker != SYNC) {
+                    throw new FramingException();
+                }
+                byte kind = in.readByte();
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    throw new FramingException();
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                frames.accept(kind, body, in.readInt());
+            }
+        } catch (EOFException truncated) {
+            throw new FramingException();
+        }
+    }
+
+    // Walks the raw bytes looking for sync markers, so one corrupt length or a torn region only
+    // costs the records it overlaps.
+    private static Frames salvage(byte[] data) throws IOException {
+        ByteBuffer view = ByteBuffer.wrap(data);
+        if (data.length < HEADER_BYTES || view.getInt(0) != MAGIC || view.getShort(4) < 2 || view.getShort(4) > SCHEMA_VERSION) {
+            throw new IOException("snapshot header is damaged");
+        }
+        Frames frames = new Frames();
+        frames.schema = view.getShort(4);
+        frames.journalGeneration = view.getLong(14);
+        frames.footerValid = false;
+
+        int pos = HEADER_BYTES;
+        boolean skipping = false;
+        while (pos + 4 <= data.length) {
+            int marker = view.getInt(pos);
+            if (marker == END_MARKER && pos + FOOTER_BYTES == data.length) {
+                CRC32C crc = new CRC32C();
+                crc.update(data, 0, pos + 12);
+                frames.footerValid = (int) crc.getValue() == view.getInt(pos + 12)
+                        && view.getInt(pos + 4) == frames.listingFrames
+                        && view.getInt(pos + 8) == frames.transactionFrames;
+                break;
+            }
+            if (marker == SYNC && pos + FRAME_OVERHEAD <= data.length) {
+                byte kind = data[pos + 4];
+                int length = view.getInt(pos + 5);
+                int end = pos + FRAME_OVERHEAD + length;
+                if (length > 0 && length <= MAX_RECORD_BYTES && end <= data.length) {
+                    byte[] body = Arrays.copyOfRange(data, pos + 9, pos + 9 + length);
+                    int crc = view.getInt(pos + 9 + length);
+                    // A bad checksum only counts as one damaged record when the next frame lines up
+                    // after it; otherwise the length itself may be garbage, so keep scanning.
+                    if (checksum(kind, body) == crc || frameBoundary(view, end)) {
+                        frames.accept(kind, body, crc);
+                        pos = end;
+                        skipping = false;
+                        continue;
+                    }
+                }
+            }
+            if (!skipping) {
+                frames.droppedRecords++;
+                skipping = true;
+            }
+            pos++;
+        }
+        return frames;
+    }
+
+    private static boolean frameBoundary(ByteBuffer view, int pos) {
+        if (pos == view.capacity()) {
+            return true;
+        }
+        if (pos + 4 > view.capacity()) {
+            return false;
+        }
+        int marker = view.getInt(pos);
+        return marker == SYNC || marker == END_MARKER;
+    }
+
+    private static void readSchemaOne(DataInputStream in, Frames frames) throws IOException {
+        int listingCount = readCount(in);
+        for (int i = 0; i < listingCount; i++) {
+            frames.listings.add(readRecord(in));
+        }
+        int txCount = readCount(in);
+        for (int i = 0; i < txCount; i++) {
+            frames.transactions.add(readRecord(in));
+        }
+        if (in.readInt() != END_MARKER) {
+            throw new IOException("snapshot is missing its end marker");
+        }
+        frames.listingFrames = listingCount;
+        frames.transactionFrames = txCount;
+        frames.footerValid = true;
+    }
+
+    private static void writeFrame(DataOutputStream out, byte kind, byte[] body) throws IOException {
+        out.writeInt(SYNC);
+        out.writeByte(kind);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt(checksum(kind, body));
+    }
+
+    private static int checksum(byte kind, byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(kind);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    static void writeListing(DataOutputStream out, AuctionListing listing) throws IOException {
+        byte[] item = listing.item().bytes();
+        writeUuid(out, listing.id());
+        writeUuid(out, listing.sellerUuid());
+        out.writeUTF(listing.sellerName());
+        out.writeDouble(listing.price());
+        out.writeLong(listing.createdAt().toEpochMilli());
+        out.writeLong(listing.expiresAt().toEpochMilli());
+        out.writeInt(item.length);
+        out.write(item);
+        StoredItem.writeHeader(out, listing.item().header());
+    }
+
+    static AuctionListing readListing(DataInputStream in, boolean withHeader) throws IOException {
+        return readPendingListing(in, withHeader).decode();
+    }
+
+    static PendingListing readPendingListing(DataInputStream in, boolean withHeader) throws IOException {
+        UUID id = readUuid(in);
+        UUID seller = readUuid(in);
+        String sellerName = in.readUTF();
+        double price = in.readDouble();
+        Instant createdAt = Instant.ofEpochMilli(in.readLong());
+        Instant expiresAt = Instant.ofEpochMilli(in.readLong());
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("invalid item length " + length);
+        }
+        byte[] itemBytes = new byte[length];
+        in.readFully(itemBytes);
+        StoredItem.Header header = withHeader ? StoredItem.readHeader(in) : null;
+        return new PendingListing(id, seller, sellerName, price, createdAt, expiresAt, itemBytes, header);
+    }
+
+    static void writeTransaction(DataOutputStream out, TransactionRecord tx) throws IOException {
+        writeUuid(out, tx.auctionId());
+        writeUuid(out, tx.buyer());
+        out.writeUTF(tx.buyerName());
+        writeUuid(out, tx.seller());
+        out.writeUTF(tx.sellerName());
+        out.writeDouble(tx.price());
+        out.writeLong(tx.at().toEpochMilli());
+    }
+
+    static TransactionRecord readTransaction(DataInputStream in) throws IOException {
+        return new TransactionRecord(
+                readUuid(in),
+                readUuid(in),
+                in.readUTF(),
+                readUuid(in),
+                in.readUTF(),
+                in.readDouble(),
+                Instant.ofEpochMilli(in.readLong())
+        );
+    }
+
+    static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("negative record count");
+        }
+        return count;
+    }
+
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("invalid record length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    private static final class Frames {
+        private final List<byte[]> listings = new ArrayList<>();
+        private final List<byte[]> transactions = new ArrayList<>();
+        private final List<UUID> dropped = new ArrayList<>();
+        private long journalGeneration;
+        private int schema;
+        private int listingFrames;
+        private int transactionFrames;
+        private int droppedRecords;
+        private boolean footerValid;
+
+        private void accept(byte kind, byte[] body, int crc) {
+            boolean valid = checksum(kind, body) == crc;
+            if (kind == KIND_LISTING) {
+                listingFrames++;
+                if (valid) {
+                    listings.add(body);
+                } else {
+                    dropListing(body);
+                }
+            } else if (kind == KIND_TRANSACTION) {
+                transactionFrames++;
+                if (valid) {
+                    transactions.add(body);
+                } else {
+                    droppedRecords++;
+                }
+            } else {
+                droppedRecords++;
+            }
+        }
+
+        // Listing bodies start with the listing id, which is the best identification left for a
+        // record that failed its checksum.
+        private void dropListing(byte[] body) {
+            droppedRecords++;
+            if (body.length >= 16) {
+                ByteBuffer view = ByteBuffer.wrap(body);
+                dropped.add(new UUID(view.getLong(0), view.getLong(8)));
+            }
+        }
+    }
+
+    private static final class FramingException extends IOException {
+        private FramingException() {
+            super("snapshot framing is damaged");
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.siberanka.donutauctions.auction;
+
+import com.siberanka.donutauctions.DonutAuctionsPlugin;
+import com.siberanka.donutauctions.util.AtomicFileUtil;
+import com.siberanka.donutauctions.util.BackupStore;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// Snapshot file + journal + memory-mapped transaction archive, all under the plugin data folder.
+public final class FileAuctionRepository implements AuctionRepository {
+
+    private final DonutAuctionsPlugin plugin;
+    private final AuctionJournal journal;
+    private final TransactionArchive archive;
+    private final BackupStore backupStore;
+    private volatile boolean checkpointRequested;
+    private boolean legacyMigrationPending;
+
+    public FileAuctionRepository(DonutAuctionsPlugin plugin) {
+        this.plugin = plugin;
+        this.journal = new AuctionJournal(journalDir().toPath());
+        this.archive = new TransactionArchive(new File(plugin.getDataFolder(), "transactions").toPath());
+        this.backupStore = new BackupStore(backupDir().toPath(), "auction-data.bin");
+    }
+
+    @Override
+    public String backend() {
+        return "file";
+    }
+
+    @Override
+    public List<AuctionListing> load(ForkJoinPool pool, AuctionSnapshotCodec.Timings timings) {
+        AuctionSnapshotCodec.Snapshot snapshot = readSnapshot(pool, timings);
+        openArchive();
+
+        Map<UUID, AuctionListing> book = new LinkedHashMap<>();
+        long fromGeneration = 0L;
+        if (snapshot != null) {
+            for (AuctionListing listing : snapshot.listings()) {
+                book.put(listing.id(), listing);
+            }
+            importTransactions(snapshot.transactions());
+            fromGeneration = snapshot.journalGeneration();
+        }
+
+        long replayStart = System.nanoTime();
+        int replayed = journal.replay(fromGeneration, new JournalReplay(book));
+        if (replayed > 0) {
+            plugin.getLogger().info("Replayed " + replayed + " auction journal entries.");
+            checkpointRequested = true;
+        }
+        timings.replayNanos = System.nanoTime() - replayStart;
+
+        if (plugin.getConfig().getBoolean("storage.journal.enabled", true)) {
+            try {
+                journal.open(fromGeneration);
+            } catch (IOException ex) {
+                plugin.getLogger().warning("Auction journal unavailable, falling back to full saves: " + ex.getClass().getSimpleName());
+            }
+        }
+        return new ArrayList<>(book.values());
+    }
+
+    @Override
+    public boolean hasData() {
+        return dataFile().exists() || legacyDataFile().exists() || !archive.isEmpty();
+    }
+
+    @Override
+    public void putListing(AuctionListing listing) throws IOException {
+        journaled(() -> journal.appendPut(listing));
+    }
+
+    @Override
+    public void removeListing(UUID listingId) throws IOException {
+        journaled(() -> journal.appendRemove(listingId));
+    }
+
+    @Override
+    public void updatePrice(UUID listingId, double price) throws IOException {
+        journaled(() -> journal.appendPrice(listingId, price));
+    }
+
+    @Override
+    public void recordSale(TransactionRecord transaction) throws IOException {
+        appendTransaction(transaction);
+        journaled(() -> journal.appendSale(transaction));
+    }
+
+    @Override
+    public void appendTransaction(TransactionRecord transaction) throws IOException {
+        archive.append(transaction);
+    }
+
+    @Override
+    public int transactionCount(UUID player) {
+        return archive.count(player);
+    }
+
+    @Override
+    public List<TransactionRecord> transactionPage(UUID player, int offset, int limit) {
+        return archive.page(player, offset, limit);
+    }
+
+    @Override
+    public void forEachTransaction(Consumer<TransactionRecord> action) {
+        archive.forEach(action);
+    }
+
+    @Override
+    public void replaceListings(List<AuctionListing> listings) throws IOException {
+        prepareCheckpoint(listings).commit();
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return journal.isOpen();
+    }
+
+    @Override
+    public boolean checkpointDue() {
+        long threshold = Math.max(64L * 1024L, plugin.getConfig().getLong("storage.journal.checkpoint-bytes", 4L * 1024L * 1024L));
+        return checkpointRequested || journal.isOpen() && journal.segmentBytes() >= threshold;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        journal.force();
+        archive.force();
+    }
+
+    // Rotating here pins the journal generation to exactly the listings passed in; the snapshot
+    // itself is encoded and written in commit(), outside the service lock.
+    @Override
+    public Checkpoint prepareCheckpoint(List<AuctionListing> listings) throws IOException {
+        boolean journaled = journal.isOpen();
+        long generation = journaled ? journal.rotate() : 0L;
+        checkpointRequested = false;
+        AuctionSnapshotCodec.Snapshot snapshot = new AuctionSnapshotCodec.Snapshot(generation, listings, List.of());
+        return () -> {
+            try {
+                File file = dataFile();
+                backupCurrent(file);
+                AtomicFileUtil.writeAtomically(file.toPath(), out -> AuctionSnapshotCodec.write(out, snapshot));
+            } catch (IOException ex) {
+                checkpointRequested = true;
+                throw ex;
+            }
+            archive.force();
+            journal.deleteBefore(journaled ? generation : Long.MAX_VALUE);
+            retireLegacyData();
+        };
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+        archive.close();
+    }
+
+    private void journaled(JournalWrite write) throws IOException {
+        if (!journal.isOpen()) {
+            return;
+        }
+        try {
+            write.run();
+        } catch (IOException ex) {
+            checkpointRequested = true;
+            throw ex;
+        }
+    }
+
+    private void openArchive() {
+        try {
+            int damaged = archive.open(Math.max(1, plugin.getConfig().getInt("auction.transactions-max", 200)));
+            if (damaged > 0) {
+                plugin.getLogger().warning("Transaction archive skipped " + damaged + " damaged record(s)");
+            }
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Transaction archive unavailable: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    // Snapshots written before the archive existed carry transactions inline, newest first.
+    private void importTransactions(List<TransactionRecord> inline) {
+        if (inline.isEmpty() || !archive.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = inline.size() - 1; i >= 0; i--) {
+                archive.append(inline.get(i));
+            }
+            checkpointRequested = true;
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Transaction history import failed safely: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    private AuctionSnapshotCodec.Snapshot readSnapshot(ForkJoinPool pool, AuctionSnapshotCodec.Timings timings) {
+        File file = dataFile();
+        if (!file.exists()) {
+            long started = System.nanoTime();
+            AuctionSnapshotCodec.Snapshot legacy = readLegacySnapshot();
+            timings.readNanos = System.nanoTime() - started;
+            return legacy;
+        }
+        try {
+            return reportDamage(file, AuctionSnapshotCodec.read(file.toPath(), pool, timings));
+        } catch (IOException ex) {
+            var restored = backupStore.restoreLatest(file.toPath());
+            if (restored.isEmpty()) {
+                restored = AtomicFileUtil.restoreLatestBackup(file.toPath(), backupDir().toPath());
+            }
+            if (restored.isEmpty()) {
+                return null;
+            }
+            plugin.getLogger().warning("Recovered auction data from backup: " + restored.get().getFileName());
+            try {
+                return reportDamage(file, AuctionSnapshotCodec.read(file.toPath(), pool, timings));
+            } catch (IOException again) {
+                return null;
+            }
+        }
+    }
+
+    // Salvaged snapshots are kept as-is for inspection and rewritten cleanly at the next checkpoint.
+    private AuctionSnapshotCodec.Snapshot reportDamage(File file, AuctionSnapshotCodec.Snapshot snapshot) {
+        AuctionSnapshotCodec.Damage damage = snapshot.damage();
+        if (!damage.isDamaged()) {
+            return snapshot;
+        }
+        checkpointRequested = true;
+        if (damage.droppedRecords() == 0) {
+            plugin.getLogger().warning("Auction snapshot footer digest did not match; every record passed its own checksum.");
+            return snapshot;
+        }
+        try {
+            Files.copy(file.toPath(), file.toPath().resolveSibling(file.getName() + ".damaged-" + System.currentTimeMillis()));
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Could not keep a copy of the damaged snapshot: " + ex.getClass().getSimpleName());
+        }
+        plugin.getLogger().warning("Auction snapshot was damaged: salvaged " + snapshot.listings().size()
+                + " listings, dropped " + damage.droppedRecords() + " record(s).");
+        if (!damage.droppedListings().isEmpty()) {
+            plugin.getLogger().warning("Dropped listing IDs: " + damage.droppedListings());
+        }
+        return snapshot;
+    }
+
+    private AuctionSnapshotCodec.Snapshot readLegacySnapshot() {
+        File file = legacyDataFile();
+        if (!file.exists()) {
+            return null;
+        }
+
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        if (!isCommitted(yaml)) {
+            var restored = AtomicFileUtil.restoreLatestBackup(file.toPath(), backupDir().toPath());
+            if (restored.isEmpty()) {
+                return null;
+            }
+            plugin.getLogger().warning("Recovered auction data from backup: " + restored.get().getFileName());
+            yaml = YamlConfiguration.loadConfiguration(file);
+            if (!isCommitted(yaml)) {
+                return null;
+            }
+        }
+
+        List<AuctionListing> legacyListings = new ArrayList<>();
+        ConfigurationSection listingsSection = yaml.getConfigurationSection("listings");
+        if (listingsSection != null) {
+            for (String key : listingsSection.getKeys(false)) {
+                try {
+                    UUID id = UUID.fromString(key);
+                    ConfigurationSection section = listingsSection.getConfigurationSection(key);
+                    if (section == null) {
+                        continue;
+                    }
+
+                    ItemStack item = section.getItemStack("item");
+                    if (item == null || item.getType() == Material.AIR) {
+                        continue;
+                    }
+
+                    UUID seller = UUID.fromString(section.getString("seller-uuid", ""));
+                    legacyListings.add(new AuctionListing(
+                            id,
+                            seller,
+                            section.getString("seller-name", "unknown"),
+                            StoredItem.of(item),
+                            section.getDouble("price", 0.0D),
+                            Instant.ofEpochMilli(section.getLong("created-at", System.currentTimeMillis())),
+                            Instant.ofEpochMilli(section.getLong("expires-at", System.currentTimeMillis()))
+                    ));
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        List<TransactionRecord> legacyTransactions = new ArrayList<>();
+        List<Map<?, ?>> txList = yaml.getMapList("transactions");
+        for (Map<?, ?> row : txList) {
+            try {
+                TransactionRecord tx = new TransactionRecord(
+                        UUID.fromString(String.valueOf(row.get("auction-id"))),
+                        UUID.fromString(String.valueOf(row.get("buyer"))),
+                        String.valueOf(row.get("buyer-name")),
+                        UUID.fromString(String.valueOf(row.get("seller"))),
+                        String.valueOf(row.get("seller-name")),
+                        Double.parseDouble(String.valueOf(row.get("price"))),
+                        Instant.ofEpochMilli(Long.parseLong(String.valueOf(row.get("at"))))
+                );
+                legacyTransactions.add(tx);
+            } catch (Exception ignored) {
+            }
+        }
+
+        plugin.getLogger().info("Migrating auction-data.yml to the binary snapshot format.");
+        legacyMigrationPending = true;
+        checkpointRequested = true;
+        return new AuctionSnapshotCodec.Snapshot(yaml.getLong("journal-generation", 0L), legacyListings, legacyTransactions);
+    }
+
+    private boolean isCommitted(YamlConfiguration yaml) {
+        return yaml.getInt("schema-version", 0) == 1 && yaml.getBoolean("commit-marker", false);
+    }
+
+    private void backupCurrent(File file) throws IOException {
+        int keep = Math.max(2, plugin.getConfig().getInt("storage.backup-keep", 5));
+        if (!"incremental".equalsIgnoreCase(plugin.getConfig().getString("storage.backup-mode", "incremental"))) {
+            AtomicFileUtil.rotateBackups(file.toPath(), backupDir().toPath(), keep);
+            return;
+        }
+        try {
+            backupStore.backup(file.toPath(), keep);
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Incremental backup failed safely: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    private void retireLegacyData() {
+        if (!legacyMigrationPending) {
+            return;
+        }
+        File legacy = legacyDataFile();
+        try {
+            Files.move(legacy.toPath(), legacy.toPath().resolveSibling(legacy.getName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+            legacyMigrationPending = false;
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Could not retire legacy auction-data.yml: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    private File dataFile() {
+        return new File(plugin.getDataFolder(), "auction-data.bin");
+    }
+
+    private File legacyDataFile() {
+        return new File(plugin.getDataFolder(), "auction-data.yml");
+    }
+
+    private File backupDir() {
+        return new File(plugin.getDataFolder(), "backups");
+    }
+
+    private File journalDir() {
+        return new File(plugin.getDataFolder(), "journal");
+    }
+
+    @FunctionalInterface
+    private interface JournalWrite {
+        void run() throws IOException;
+    }
+
+    private final class JournalReplay implements AuctionJournal.Replay {
+
+        private final Map<UUID, AuctionListing> book;
+
+        private JournalReplay(Map<UUID, AuctionListing> book) {
+            this.book = book;
+        }
+
+        // Expired listings are replayed too: AuctionService.load returns them through the reclaim store.
+        @Override
+        public void put(AuctionListing listing) {
+            book.put(listing.id(), listing);
+        }
+
+        @Override
+        public void remove(UUID listingId) {
+            book.remove(listingId);
+        }
+
+        @Override
+        public void price(UUID listingId, double price) {
+            book.computeIfPresent(listingId, (id, listing) -> new AuctionListing(
+                    listing.id(),
+                    listing.sellerUuid(),
+                    listing.sellerName(),
+                    listing.item(),
+                    price,
+                    listing.createdAt(),
+                    listing.expiresAt()
+            ));
+        }
+
+        @Override
+        public void sale(TransactionRecord transaction) {
+            book.remove(transaction.auctionId());
+            try {
+                archive.appendIfMissing(transaction);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.siberanka.donutauctions.auction;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+// Applies repository writes on one background thread in submission order and makes each batch
+// durable with a single commit, so a sale rush pays for one fsync per window instead of per sale.
+public final class GroupCommitWriter {
+
+    @FunctionalInterface
+    interface Write {
+        void run() throws IOException;
+    }
+
+    public record Stats(long batches, long writes, int lastBatch, int maxBatch, long avgFsyncMicros, long maxFsyncMicros,
+                        long avgLatencyMicros, long maxLatencyMicros, long failures, int pending) {
+        public double avgBatch() {
+            return batches == 0 ? 0D : (double) writes / batches;
+        }
+    }
+
+    private record Pending(Write write, long enqueuedAt, CompletableFuture<Void> done) {
+    }
+
+    private final AuctionRepository repository;
+    private final Logger logger;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private Thread thread;
+    private boolean running;
+    private boolean inFlight;
+    private long windowNanos;
+
+    private long batches;
+    private long writes;
+    private int lastBatch;
+    private int maxBatch;
+    private long fsyncNanos;
+    private long maxFsyncNanos;
+    private long latencyNanos;
+    private long maxLatencyNanos;
+    private long failures;
+
+    public GroupCommitWriter(AuctionRepository repository, Logger logger) {
+        this.repository = repository;
+        this.logger = logger;
+    }
+
+    public synchronized void start(long windowMillis) {
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, windowMillis));
+        if (running) {
+            return;
+        }
+        running = true;
+        if (thread != null) {
+            // The previous worker is still draining and simply carries on.
+            return;
+        }
+        thread = new Thread(this::loop, "DonutAuctions-GroupCommit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Drains everything already submitted before returning. Writes submitted while it drains are
+    // still queued behind the earlier ones; only once the worker has exited do writes run inline.
+    public void stop() {
+        Thread worker;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            worker = thread;
+            notifyAll();
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public CompletableFuture<Void> submit(Write write) {
+        synchronized (this) {
+            if (thread != null) {
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                queue.add(new Pending(write, System.nanoTime(), done));
+                notifyAll();
+                return done;
+            }
+        }
+        try {
+            write.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException ex) {
+            logger.warning("Auction storage write failed safely: " + ex.getClass().getSimpleName());
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    // Blocks until every submitted write has been applied and committed.
+    public synchronized void awaitIdle() {
+        boolean interrupted = false;
+        while (!queue.isEmpty() || inFlight) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(
+                batches,
+                writes,
+                lastBatch,
+                maxBatch,
+                batches == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(fsyncNanos / batches),
+                TimeUnit.NANOSECONDS.toMicros(maxFsyncNanos),
+                writes == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(latencyNanos / writes),
+                TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos),
+                failures,
+                queue.size()
+        );
+    }
+
+    private void loop() {
+        while (true) {
+            long window;
+            synchronized (this) {
+                while (queue.isEmpty() && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (queue.isEmpty()) {
+                    // Cleared together with the empty check, so no submit can queue behind an exiting worker.
+                    thread = null;
+                    notifyAll();
+                    return;
+                }
+                window = running ? windowNanos : 0L;
+            }
+            if (window > 0L) {
+                LockSupport.parkNanos(window);
+            }
+
+            List<Pending> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(queue);
+                queue.clear();
+                inFlight = true;
+            }
+            commit(batch);
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        int failed = 0;
+        long fsync;
+        IOException commitFailure = null;
+        try {
+            repository.beginBatch();
+            for (Pending pending : batch) {
+                try {
+                    pending.write().run();
+                } catch (IOException | RuntimeException ex) {
+                    failed++;
+                    pending.done().completeExceptionally(ex);
+                    logger.warning("Auction storage write failed safely: " + ex.getClass().getSimpleName());
+                }
+            }
+        } catch (IOException ex) {
+            commitFailure = ex;
+        } finally {
+            long started = System.nanoTime();
+            try {
+                repository.commitBatch();
+            } catch (IOException ex) {
+                if (commitFailure == null) {
+                    commitFailure = ex;
+                }
+            }
+            fsync = System.nanoTime() - started;
+        }
+        if (commitFailure != null) {
+            logger.warning("Auction storage commit failed safely: " + commitFailure.getClass().getSimpleName());
+        }
+
+        long now = System.nanoTime();
+        long latency = 0L;
+        long worstLatency = 0L;
+        for (Pending pending : batch) {
+            long waited = now - pending.enqueuedAt();
+            latency += waited;
+            worstLatency = Math.max(worstLatency, waited);
+            if (commitFailure != null) {
+                pending.done().completeExceptionally(commitFailure);
+            } else {
+                pending.done().complete(null);
+            }
+        }
+
+        synchronized (this) {
+            batches++;
+            writes += batch.size();
+            lastBatch = batch.size();
+            maxBatch = Math.max(maxBatch, batch.size());
+            fsyncNanos += fsync;
+            maxFsyncNanos = Math.max(maxFsyncNanos, fsync);
+            latencyNanos += latency;
+            maxLatencyNanos = Math.max(maxLatencyNanos, worstLatency);
+            failures += commitFailure != null ? batch.size() : failed;
+            inFlight = false;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.siberanka.donutauctions.auction;
+
+import com.siberanka.donutauctions.filter.CategoryTable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The live auction book: listings by id plus secondary indices that are updated together with the
+// primary map under one lock. Point lookups, search and seller pages read concurrent or
+// copy-on-write structures and never block. Browse pages read an immutable sorted array per sort
+// order and category, published for one version of the book: the first reader after a change
+// copies the (already sorted) index under the book lock, every later reader of that version shares
+// it, so a page and its total always come from the same state of the book.
+// Besides the book-wide sort indices, every filter category has its own bucket of sort indices.
+public final class ListingBook {
+
+    // The table and the buckets built from it are swapped together on a filter reload.
+    private record Categories(CategoryTable table, SortIndex[] buckets) {
+    }
+
+    // An immutable copy of the book as of one version.
+    private record Snapshot(long version, List<AuctionListing> listings) {
+    }
+
+    // One sort index in one order, as of one version; never modified once published.
+    private record Sorted(long version, AuctionListing[] listings) {
+    }
+
+    private final ConcurrentHashMap<UUID, AuctionListing> byId = new ConcurrentHashMap<>();
+    // Claimed by compare-and-set without the book lock; entries live exactly as long as the listing.
+    private final ConcurrentHashMap<UUID, ListingState> states = new ConcurrentHashMap<>();
+    // Each seller's set is immutable and replaced whole; sellers hold few listings.
+    private final ConcurrentHashMap<UUID, Set<UUID>> bySeller = new ConcurrentHashMap<>();
+    private final SortIndex all = new SortIndex();
+    private final SearchIndex search = new SearchIndex();
+    private volatile Categories categories = new Categories(CategoryTable.EMPTY, new SortIndex[0]);
+    // Bumped by every mutation and filter reload; snapshots and cached pages are reused until it moves on.
+    private volatile long version;
+    private volatile Snapshot snapshot = new Snapshot(0L, List.of());
+
+    public AuctionListing get(UUID id) {
+        return byId.get(id);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    // Weakly consistent view, safe to iterate while the book changes.
+    public Collection<AuctionListing> values() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    public long version() {
+        return version;
+    }
+
+    // Readers asking for the same version share one immutable copy; only a stale one is rebuilt.
+    public List<AuctionListing> snapshot() {
+        Snapshot current = snapshot;
+        if (current.version() == version) {
+            return current.listings();
+        }
+        synchronized (this) {
+            if (snapshot.version() != version) {
+                snapshot = new Snapshot(version, List.copyOf(byId.values()));
+            }
+            return snapshot.listings();
+        }
+    }
+
+    // Replacing a listing (e.g. a reprice) keeps its state, so a reservation survives it.
+    public synchronized AuctionListing put(AuctionListing listing) {
+        AuctionListing previous = byId.get(listing.id());
+        boolean reindexText = previous == null || !search.sameText(previous, listing);
+        if (previous != null) {
+            unindex(previous, reindexText);
+        }
+        byId.put(listing.id(), listing);
+        states.putIfAbsent(listing.id(), ListingState.ACTIVE);
+        index(listing, reindexText);
+        version++;
+        return previous;
+    }
+
+    // Replaces a listing only while nobody holds it, e.g. for a periodic reprice.
+    public boolean putIfActive(AuctionListing listing) {
+        if (!claim(listing.id())) {
+            return false;
+        }
+        put(listing);
+        release(listing.id());
+        return true;
+    }
+
+    public ListingState state(UUID id) {
+        return states.get(id);
+    }
+
+    // True only for the single caller that moved the listing from ACTIVE to RESERVED.
+    public boolean claim(UUID id) {
+        return states.replace(id, ListingState.ACTIVE, ListingState.RESERVED);
+    }
+
+    public void release(UUID id) {
+        states.replace(id, ListingState.RESERVED, ListingState.ACTIVE);
+    }
+
+    // Ends a reservation held by the caller and removes the listing.
+    public synchronized AuctionListing settle(UUID id, ListingState outcome) {
+        return states.replace(id, ListingState.RESERVED, outcome) ? remove(id) : null;
+    }
+
+    // Removes a listing nobody holds, in one step.
+    public synchronized AuctionListing take(UUID id, ListingState outcome) {
+        return states.replace(id, ListingState.ACTIVE, outcome) ? remove(id) : null;
+    }
+
+    private AuctionListing remove(UUID id) {
+        AuctionListing removed = byId.remove(id);
+        states.remove(id);
+        if (removed != null) {
+            unindex(removed, true);
+            version++;
+        }
+        return removed;
+    }
+
+    // Listings whose expiry has passed, soonest deadline first; the walk stops at the first listing
+    // that is still live, so the cost is bounded by max rather than by the size of the book.
+    public List<AuctionListing> due(Instant now, int max) {
+        List<AuctionListing> out = new ArrayList<>();
+        for (AuctionListing listing : all.byExpiry) {
+            if (out.size() >= max || !listing.expiresAt().isBefore(now)) {
+                break;
+            }
+            out.add(listing);
+        }
+        return out;
+    }
+
+    public synchronized void replaceAll(Collection<AuctionListing> listings) {
+        clear();
+        for (AuctionListing listing : listings) {
+            put(listing);
+        }
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        states.clear();
+        bySeller.clear();
+        all.clear();
+        search.clear();
+        for (SortIndex bucket : categories.buckets()) {
+            bucket.clear();
+        }
+        version++;
+    }
+
+    // Re-buckets every listing under a freshly compiled filter table.
+    public synchronized void useCategories(CategoryTable table) {
+        SortIndex[] buckets = new SortIndex[table.size()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new SortIndex();
+        }
+        Categories next = new Categories(table, buckets);
+        for (AuctionListing listing : byId.values()) {
+            bucket(next, listing, true);
+        }
+        categories = next;
+        version++;
+    }
+
+    // Without a query, slices the sorted snapshot of the category (or the whole book). With one, the
+    // trigram index yields the matches, which are the only listings that get sorted.
+    public ListingPage page(SortMode sort, String category, String query, int offset, int limit) {
+        Categories current = categories;
+        int bit = current.table().bit(category);
+        if (query != null && !query.isBlank()) {
+            List<AuctionListing> hits = new ArrayList<>();
+            for (UUID id : search(query)) {
+                AuctionListing listing = byId.get(id);
+                if (listing != null && current.table().matches(bit, listing.item().material())) {
+                    hits.add(listing);
+                }
+            }
+            hits.sort(sort.comparator());
+            int from = Math.min(Math.max(0, offset), hits.size());
+            int to = Math.min(hits.size(), from + Math.max(0, limit));
+            return new ListingPage(List.copyOf(hits.subList(from, to)), hits.size(), pageOf(offset, limit), limit);
+        }
+
+        AuctionListing[] sorted = sorted(sort, category);
+        int from = Math.min(Math.max(0, offset), sorted.length);
+        int to = Math.min(sorted.length, from + Math.max(0, limit));
+        return new ListingPage(Arrays.asList(sorted).subList(from, to), sorted.length, pageOf(offset, limit), limit);
+    }
+
+    private AuctionListing[] sorted(SortMode sort, String category) {
+        Sorted cached = indexFor(categories, category).sorted(sort);
+        if (cached != null && cached.version() == version) {
+            return cached.listings();
+        }
+        synchronized (this) {
+            SortIndex index = indexFor(categories, category);
+            cached = index.sorted(sort);
+            if (cached == null || cached.version() != version) {
+                cached = new Sorted(version, index.ordered(sort).toArray(new AuctionListing[0]));
+                index.publish(sort, cached);
+            }
+            return cached.listings();
+        }
+    }
+
+    private SortIndex indexFor(Categories current, String category) {
+        int bit = current.table().bit(category);
+        return bit < 0 ? all : current.buckets()[bit];
+    }
+
+    private List<UUID> search(String query) {
+        return search.search(query);
+    }
+
+    public int countBySeller(UUID seller) {
+        return bySeller.getOrDefault(seller, Set.of()).size();
+    }
+
+    // Only the seller's own listings are read and sorted.
+    public ListingPage sellerPage(UUID seller, SortMode sort, int offset, int limit) {
+        Set<UUID> ids = bySeller.getOrDefault(seller, Set.of());
+        List<AuctionListing> mine = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            AuctionListing listing = byId.get(id);
+            if (listing != null) {
+                mine.add(listing);
+            }
+        }
+        mine.sort(sort.comparator());
+        int from = Math.min(Math.max(0, offset), mine.size());
+        int to = Math.min(mine.size(), from + Math.max(0, limit));
+        return new ListingPage(List.copyOf(mine.subList(from, to)), mine.size(), pageOf(offset, limit), limit);
+    }
+
+    private static int pageOf(int offset, int limit) {
+        return limit <= 0 ? 1 : Math.max(0, offset) / limit + 1;
+    }
+
+    private void index(AuctionListing listing, boolean text) {
+        bySeller.compute(listing.sellerUuid(), (seller, ids) -> with(ids, listing.id(), true));
+        all.add(listing);
+        bucket(categories, listing, true);
+        if (text) {
+            search.add(listing);
+        }
+    }
+
+    private void unindex(AuctionListing listing, boolean text) {
+        all.remove(listing);
+        bucket(categories, listing, false);
+        if (text) {
+            search.remove(listing);
+        }
+        bySeller.computeIfPresent(listing.sellerUuid(), (seller, ids) -> with(ids, listing.id(), false));
+    }
+
+    // Copy of ids with one id added or removed; null (no entry) once the set is empty.
+    private static Set<UUID> with(Set<UUID> ids, UUID id, boolean add) {
+        Set<UUID> next = ids == null ? new LinkedHashSet<>() : new LinkedHashSet<>(ids);
+        if (add) {
+            next.add(id);
+        } else {
+            next.remove(id);
+        }
+        return next.isEmpty() ? null : Collections.unmodifiableSet(next);
+    }
+
+    private static void bucket(Categories categories, AuctionListing listing, boolean add) {
+        long mask = categories.table().mask(listing.item().material());
+        while (mask != 0L) {
+            int bit = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            if (add) {
+                categories.buckets()[bit].add(listing);
+            } else {
+                categories.buckets()[bit].remove(listing);
+            }
+        }
+    }
+
+    private static final class SortIndex {
+        private final ConcurrentSkipListSet<AuctionListing> byCreated = new ConcurrentSkipListSet<>(SortMode.BY_CREATED);
+        private final ConcurrentSkipListSet<AuctionListing> byPrice = new ConcurrentSkipListSet<>(SortMode.BY_PRICE);
+        private final ConcurrentSkipListSet<AuctionListing> byExpiry = new ConcurrentSkipListSet<>(SortMode.BY_EXPIRY);
+        private final ConcurrentSkipListSet<AuctionListing> byUnitPrice = new ConcurrentSkipListSet<>(SortMode.BY_UNIT_PRICE);
+        private final AtomicReferenceArray<Sorted> sorted = new AtomicReferenceArray<>(SortMode.values().length);
+
+        private void add(AuctionListing listing) {
+            byCreated.add(listing);
+            byPrice.add(listing);
+            byExpiry.add(listing);
+            byUnitPrice.add(listing);
+        }
+
+        private void remove(AuctionListing listing) {
+            byCreated.remove(listing);
+            byPrice.remove(listing);
+            byExpiry.remove(listing);
+            byUnitPrice.remove(listing);
+        }
+
+        private void clear() {
+            byCreated.clear();
+            byPrice.clear();
+            byExpiry.clear();
+            byUnitPrice.clear();
+        }
+
+        private Sorted sorted(SortMode sort) {
+            return sorted.get(sort.ordinal());
+        }
+
+        private void publish(SortMode sort, Sorted listings) {
+            sorted.set(sort.ordinal(), listings);
+        }
+
+        private NavigableSet<AuctionListing> ordered(SortMode sort) {
+            return switch (sort) {
+                case NEWEST -> byCreated.descendingSet();
+                case OLDEST -> byCreated;
+                case PRICE_LOW -> byPrice;
+                case PRICE_HIGH -> byPrice.descendingSet();
+                case ENDING_SOON -> byExpiry;
+                case PRICE_PER_UNIT -> byUnitPrice;
+            };
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.siberanka.donutauctions.auction;
+
+import java.util.List;
+
+// The listings on one page, in order, plus how many listings matched overall. Only these entries
+// should ever be materialized into ItemStacks.
+public record ListingPage(List<AuctionListing> entries, int total, int page, int pageSize) {
+
+    // Pages may be shared between players through the query cache.
+    public ListingPage {
+        entries = List.copyOf(entries);
+    }
+
+    public int maxPage() {
+        return Math.max(1, (total + pageSize - 1) / pageSize);
+    }
+}
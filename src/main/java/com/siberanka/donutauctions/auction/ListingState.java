@@ -0,0 +1,11 @@
+package com.siberanka.donutauctions.auction;
+
+// Lifecycle of a listing in the book. A purchase moves ACTIVE to RESERVED by compare-and-set, so
+// exactly one buyer settles it; a failed settlement puts it back to ACTIVE. SOLD and CANCELLED are
+// final and the listing leaves the book with them.
+public enum ListingState {
+    ACTIVE,
+    RESERVED,
+    SOLD,
+    CANCELLED
+}
@@ -0,0 +1,279 @@
+package com.siberanka.donutauctions.auction;
+
+import com.siberanka.donutauctions.util.AtomicFileUtil;
+import org.bukkit.Material;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+// Going rates per material and enchantment fingerprint, updated by every sale. Each window is a
+// ring of time slots holding the sale count, units, turnover and a price sketch of that slot;
+// a query merges the slots still inside the window, so nothing is ever rescanned from history.
+// Prices are per unit. File layout: [magic][version][series count] then per series its key, last
+// sale and the live slots of each window, closed by a crc32c of every byte before it.
+public final class MarketStats {
+
+    public enum Window {
+        HOUR(TimeUnit.MINUTES.toMillis(5), 12),
+        DAY(TimeUnit.HOURS.toMillis(1), 24),
+        WEEK(TimeUnit.DAYS.toMillis(1), 7);
+
+        private final long slotMillis;
+        private final int slots;
+
+        Window(long slotMillis, int slots) {
+            this.slotMillis = slotMillis;
+            this.slots = slots;
+        }
+    }
+
+    // average is turnover over units sold; median is per sale, within the sketch's error.
+    public record Rate(double lastPrice, Instant lastSaleAt, double average, double median, long sales, long units) {
+    }
+
+    private record Key(Material material, String enchants) {
+    }
+
+    private static final class Slot {
+        private long index;
+        private long sales;
+        private long units;
+        private double turnover;
+        private PriceSketch sketch = new PriceSketch();
+    }
+
+    private static final class Series {
+        private final Slot[][] slots = new Slot[Window.values().length][];
+        private double lastPrice;
+        private long lastAt;
+    }
+
+    private static final int MAGIC = 0x44414D53;
+    private static final int VERSION = 1;
+    private static final long RETAIN_MILLIS = Window.WEEK.slotMillis * Window.WEEK.slots;
+
+    private final Path file;
+    private final Object writeLock = new Object();
+    private final Map<Key, Series> series = new HashMap<>();
+    private boolean dirty;
+
+    public MarketStats(Path file) {
+        this.file = file;
+    }
+
+    // A damaged file is moved aside rather than overwritten by the next save.
+    public synchronized void load() throws IOException {
+        series.clear();
+        dirty = false;
+        if (!Files.exists(file)) {
+            return;
+        }
+        byte[] data = Files.readAllBytes(file);
+        try {
+            decode(data);
+        } catch (IOException ex) {
+            series.clear();
+            Files.move(file, file.resolveSibling(file.getFileName() + ".damaged-" + System.currentTimeMillis()));
+            throw ex;
+        }
+    }
+
+    public synchronized void record(Material material, String enchants, int amount, double price, Instant at) {
+        if (material == null || amount <= 0 || !(price > 0D)) {
+            return;
+        }
+        double unitPrice = price / amount;
+        long now = at.toEpochMilli();
+        Series entry = series.computeIfAbsent(new Key(material, enchants == null ? "" : enchants), key -> new Series());
+        if (now >= entry.lastAt) {
+            entry.lastAt = now;
+            entry.lastPrice = unitPrice;
+        }
+        for (Window window : Window.values()) {
+            Slot slot = slot(entry, window, now / window.slotMillis);
+            if (slot == null) {
+                continue;
+            }
+            slot.sales++;
+            slot.units += amount;
+            slot.turnover += price;
+            slot.sketch.add(unitPrice);
+        }
+        dirty = true;
+    }
+
+    public synchronized Optional<Rate> rate(Material material, String enchants, Window window, Instant now) {
+        Series entry = series.get(new Key(material, enchants == null ? "" : enchants));
+        if (entry == null) {
+            return Optional.empty();
+        }
+        Slot[] ring = entry.slots[window.ordinal()];
+        long current = now.toEpochMilli() / window.slotMillis;
+        long sales = 0L;
+        long units = 0L;
+        double turnover = 0D;
+        PriceSketch merged = new PriceSketch();
+        if (ring != null) {
+            for (Slot slot : ring) {
+                if (slot != null && slot.index <= current && slot.index > current - window.slots) {
+                    sales += slot.sales;
+                    units += slot.units;
+                    turnover += slot.turnover;
+                    merged.addAll(slot.sketch);
+                }
+            }
+        }
+        if (sales == 0L) {
+            return Optional.empty();
+        }
+        return Optional.of(new Rate(entry.lastPrice, Instant.ofEpochMilli(entry.lastAt), turnover / units,
+                merged.quantile(0.5D), sales, units));
+    }
+
+    public void save() throws IOException {
+        synchronized (writeLock) {
+            byte[] data;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                prune(System.currentTimeMillis());
+                data = encode();
+                dirty = false;
+            }
+            try {
+                AtomicFileUtil.writeAtomically(file, out -> out.write(data));
+            } catch (IOException ex) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw ex;
+            }
+        }
+    }
+
+    // A slot left over from an earlier turn of the ring is reset before it is reused; a sale older
+    // than the slot it maps to has already left the window and yields null.
+    private static Slot slot(Series entry, Window window, long index) {
+        Slot[] ring = entry.slots[window.ordinal()];
+        if (ring == null) {
+            ring = new Slot[window.slots];
+            entry.slots[window.ordinal()] = ring;
+        }
+        int at = (int) Math.floorMod(index, (long) window.slots);
+        Slot slot = ring[at];
+        if (slot != null && slot.index > index) {
+            return null;
+        }
+        if (slot == null || slot.index != index) {
+            slot = new Slot();
+            slot.index = index;
+            ring[at] = slot;
+        }
+        return slot;
+    }
+
+    // Materials without a sale in the last week are forgotten.
+    private void prune(long now) {
+        series.values().removeIf(entry -> now - entry.lastAt > RETAIN_MILLIS);
+    }
+
+    private byte[] encode() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(series.size());
+        for (Map.Entry<Key, Series> entry : series.entrySet()) {
+            Series value = entry.getValue();
+            out.writeUTF(entry.getKey().material().name());
+            out.writeUTF(entry.getKey().enchants());
+            out.writeDouble(value.lastPrice);
+            out.writeLong(value.lastAt);
+            for (Window window : Window.values()) {
+                Slot[] ring = value.slots[window.ordinal()];
+                int live = 0;
+                if (ring != null) {
+                    for (Slot slot : ring) {
+                        live += slot == null ? 0 : 1;
+                    }
+                }
+                out.writeByte(live);
+                if (ring == null) {
+                    continue;
+                }
+                for (Slot slot : ring) {
+                    if (slot == null) {
+                        continue;
+                    }
+                    out.writeLong(slot.index);
+                    out.writeLong(slot.sales);
+                    out.writeLong(slot.units);
+                    out.writeDouble(slot.turnover);
+                    slot.sketch.write(out);
+                }
+            }
+        }
+        out.flush();
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private void decode(byte[] data) throws IOException {
+        if (data.length < 14) {
+            throw new IOException("market stats file is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data).getInt(data.length - 4)) {
+            throw new IOException("market stats checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            throw new IOException("not a market stats file");
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Material material = Material.matchMaterial(in.readUTF());
+            String enchants = in.readUTF();
+            Series value = new Series();
+            value.lastPrice = in.readDouble();
+            value.lastAt = in.readLong();
+            for (Window window : Window.values()) {
+                int live = in.readUnsignedByte();
+                if (live > window.slots) {
+                    throw new IOException("invalid slot count " + live);
+                }
+                for (int s = 0; s < live; s++) {
+                    Slot slot = slot(value, window, in.readLong());
+                    if (slot == null) {
+                        throw new IOException("overlapping market slots");
+                    }
+                    slot.sales = in.readLong();
+                    slot.units = in.readLong();
+                    slot.turnover = in.readDouble();
+                    slot.sketch = PriceSketch.read(in);
+                }
+            }
+            // Materials this server version does not know are read past and dropped.
+            if (material != null) {
+                series.put(new Key(material, enchants), value);
+            }
+        }
+    }
+}
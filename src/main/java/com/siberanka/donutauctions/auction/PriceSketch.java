@@ -0,0 +1,98 @@
+package com.siberanka.donutauctions.auction;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Streaming quantile sketch over positive prices: values fall into logarithmic buckets that are
+// GAMMA apart, so any quantile is answered within about 2% of the true value no matter how many
+// sales were added, and two sketches merge by adding their bucket counts. Buckets are kept as two
+// parallel sorted arrays; a bucket of sales rarely holds more than a few dozen distinct ones.
+final class PriceSketch {
+
+    private static final double GAMMA = 1.04D;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private int[] buckets = new int[4];
+    private long[] counts = new long[4];
+    private int size;
+    private long total;
+
+    void add(double value) {
+        if (!(value > 0D) || !Double.isFinite(value)) {
+            return;
+        }
+        add((int) Math.ceil(Math.log(value) / LOG_GAMMA), 1L);
+    }
+
+    void addAll(PriceSketch other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.buckets[i], other.counts[i]);
+        }
+    }
+
+    long total() {
+        return total;
+    }
+
+    // NaN when empty.
+    double quantile(double q) {
+        if (total == 0L) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(Math.max(0D, Math.min(1D, q)) * (total - 1));
+        long seen = 0L;
+        for (int i = 0; i < size; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                // Midpoint of the bucket (GAMMA^(b-1), GAMMA^b].
+                return 2D * Math.pow(GAMMA, buckets[i]) / (GAMMA + 1D);
+            }
+        }
+        return 2D * Math.pow(GAMMA, buckets[size - 1]) / (GAMMA + 1D);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(buckets[i]);
+            out.writeLong(counts[i]);
+        }
+    }
+
+    static PriceSketch read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > 1 << 16) {
+            throw new IOException("invalid sketch size " + size);
+        }
+        PriceSketch sketch = new PriceSketch();
+        for (int i = 0; i < size; i++) {
+            int bucket = in.readInt();
+            long count = in.readLong();
+            if (count <= 0L) {
+                throw new IOException("invalid sketch count " + count);
+            }
+            sketch.add(bucket, count);
+        }
+        return sketch;
+    }
+
+    private void add(int bucket, long count) {
+        int at = Arrays.binarySearch(buckets, 0, size, bucket);
+        if (at < 0) {
+            at = -at - 1;
+            if (size == buckets.length) {
+                buckets = Arrays.copyOf(buckets, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            System.arraycopy(buckets, at, buckets, at + 1, size - at);
+            System.arraycopy(counts, at, counts, at + 1, size - at);
+            buckets[at] = bucket;
+            counts[at] = 0L;
+            size++;
+        }
+        counts[at] += count;
+        total += count;
+    }
+}
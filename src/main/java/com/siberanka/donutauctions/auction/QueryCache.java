@@ -0,0 +1,63 @@
+package com.siberanka.donutauctions.auction;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+// Recently served pages keyed by the normalized query and the book version they were computed at,
+// so players looking at the same view share one computation. Any mutation bumps the version; the
+// first result stored for a newer version drops everything older at once.
+final class QueryCache {
+
+    private record Key(String search, String category, UUID seller, SortMode sort, int page, int pageSize) {
+    }
+
+    private final LinkedHashMap<Key, ListingPage> pages = new LinkedHashMap<>(64, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ListingPage> eldest) {
+            return size() > capacity;
+        }
+    };
+    private int capacity = 256;
+    private long version = -1L;
+    private long hits;
+    private long misses;
+
+    synchronized ListingPage get(AuctionQuery query, long bookVersion) {
+        ListingPage page = bookVersion == version ? pages.get(key(query)) : null;
+        if (page != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return page;
+    }
+
+    // Results computed against an older version than the newest cached one are not kept.
+    synchronized void put(AuctionQuery query, long bookVersion, ListingPage page) {
+        if (capacity <= 0 || bookVersion < version) {
+            return;
+        }
+        if (bookVersion > version) {
+            pages.clear();
+            version = bookVersion;
+        }
+        pages.put(key(query), page);
+    }
+
+    synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        pages.clear();
+    }
+
+    synchronized double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    private static Key key(AuctionQuery query) {
+        return new Key(query.search().strip().toLowerCase(Locale.ROOT), query.category().toLowerCase(Locale.ROOT),
+                query.seller(), query.sort(), query.page(), query.pageSize());
+    }
+}
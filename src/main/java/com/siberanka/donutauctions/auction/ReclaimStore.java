@@ -0,0 +1,177 @@
+package com.siberanka.donutauctions.auction;
+
+import com.siberanka.donutauctions.util.AtomicFileUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Items from expired listings, held per seller until they are claimed with /ah reclaim. Entries
+// are keyed by the listing id, so retiring the same listing twice (e.g. after a crash) is harmless.
+// File layout: [magic][version][count] then [seller][listing][item length][item][item header] per
+// entry, closed by a crc32c of every byte before it.
+public final class ReclaimStore {
+
+    public record Entry(UUID listingId, StoredItem item) {
+    }
+
+    private static final int MAGIC = 0x44415243;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final Object writeLock = new Object();
+    private final Map<UUID, LinkedHashMap<UUID, StoredItem>> bySeller = new HashMap<>();
+    private boolean dirty;
+
+    public ReclaimStore(Path file) {
+        this.file = file;
+    }
+
+    // A damaged file is moved aside rather than overwritten by the next save.
+    public synchronized void load() throws IOException {
+        bySeller.clear();
+        dirty = false;
+        if (!Files.exists(file)) {
+            return;
+        }
+        byte[] data = Files.readAllBytes(file);
+        try {
+            decode(data);
+        } catch (IOException ex) {
+            bySeller.clear();
+            Files.move(file, file.resolveSibling(file.getFileName() + ".damaged-" + System.currentTimeMillis()));
+            throw ex;
+        }
+    }
+
+    public synchronized boolean add(UUID seller, UUID listingId, StoredItem item) {
+        if (bySeller.computeIfAbsent(seller, id -> new LinkedHashMap<>()).putIfAbsent(listingId, item) != null) {
+            return false;
+        }
+        dirty = true;
+        return true;
+    }
+
+    public synchronized List<Entry> entries(UUID seller) {
+        Map<UUID, StoredItem> items = bySeller.get(seller);
+        if (items == null) {
+            return List.of();
+        }
+        List<Entry> out = new ArrayList<>(items.size());
+        items.forEach((listingId, item) -> out.add(new Entry(listingId, item)));
+        return out;
+    }
+
+    public synchronized int count(UUID seller) {
+        Map<UUID, StoredItem> items = bySeller.get(seller);
+        return items == null ? 0 : items.size();
+    }
+
+    // True only for the caller that actually took the entry, so an item cannot be claimed twice.
+    public synchronized boolean take(UUID seller, UUID listingId) {
+        Map<UUID, StoredItem> items = bySeller.get(seller);
+        if (items == null || items.remove(listingId) == null) {
+            return false;
+        }
+        if (items.isEmpty()) {
+            bySeller.remove(seller);
+        }
+        dirty = true;
+        return true;
+    }
+
+    public void save() throws IOException {
+        synchronized (writeLock) {
+            write();
+        }
+    }
+
+    private void write() throws IOException {
+        List<UUID> sellers = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            bySeller.forEach((seller, items) -> items.forEach((listingId, item) -> {
+                sellers.add(seller);
+                entries.add(new Entry(listingId, item));
+            }));
+            dirty = false;
+        }
+        try {
+            AtomicFileUtil.writeAtomically(file, target -> {
+                CheckedOutputStream checked = new CheckedOutputStream(target, new CRC32C());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(entries.size());
+                for (int i = 0; i < entries.size(); i++) {
+                    Entry entry = entries.get(i);
+                    byte[] item = entry.item().bytes();
+                    AuctionSnapshotCodec.writeUuid(out, sellers.get(i));
+                    AuctionSnapshotCodec.writeUuid(out, entry.listingId());
+                    out.writeInt(item.length);
+                    out.write(item);
+                    StoredItem.writeHeader(out, entry.item().header());
+                }
+                out.flush();
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+            });
+        } catch (IOException ex) {
+            synchronized (this) {
+                dirty = true;
+            }
+            throw ex;
+        }
+    }
+
+    private void decode(byte[] data) throws IOException {
+        if (data.length < 14) {
+            throw new IOException("reclaim store is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data).getInt(data.length - 4)) {
+            throw new IOException("reclaim store checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            throw new IOException("not a reclaim store");
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            UUID seller = AuctionSnapshotCodec.readUuid(in);
+            UUID listingId = AuctionSnapshotCodec.readUuid(in);
+            int length = in.readInt();
+            if (length <= 0 || length > data.length) {
+                throw new IOException("invalid item length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            StoredItem.Header header = StoredItem.readHeader(in);
+            StoredItem item;
+            try {
+                item = StoredItem.restore(bytes, header);
+            } catch (RuntimeException undecodable) {
+                continue;
+            }
+            if (item != null) {
+                bySeller.computeIfAbsent(seller, id -> new LinkedHashMap<>()).put(listingId, item);
+            }
+        }
+    }
+}
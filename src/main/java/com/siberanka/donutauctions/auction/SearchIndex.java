@@ -0,0 +1,137 @@
+package com.siberanka.donutauctions.auction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Trigram inverted index over the searchable text of each listing: material name, seller name,
+// display name (colour codes stripped) and enchantment keys. A query intersects the posting sets of
+// its trigrams, smallest first, and only the surviving candidates are checked with a substring
+// match. Underscores count as spaces, so "diamond sword" and "diamond_sword" find the same items.
+// Written only under ListingBook's lock; searches read the concurrent maps without it. A listing
+// that is being indexed at that moment may be missed, but never reported wrongly, because every
+// candidate is re-checked against its text.
+final class SearchIndex {
+
+    private static final Pattern COLOR_CODES = Pattern.compile("(?i)\u00A7[0-9A-FK-ORX]");
+
+    private final Map<Long, Set<UUID>> postings = new ConcurrentHashMap<>();
+    private final Map<UUID, String[]> fields = new ConcurrentHashMap<>();
+
+    void add(AuctionListing listing) {
+        String[] text = fieldsOf(listing);
+        fields.put(listing.id(), text);
+        for (long trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(listing.id());
+        }
+    }
+
+    void remove(AuctionListing listing) {
+        String[] text = fields.remove(listing.id());
+        if (text == null) {
+            return;
+        }
+        for (long trigram : trigrams(text)) {
+            Set<UUID> ids = postings.get(trigram);
+            if (ids != null && ids.remove(listing.id()) && ids.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    // Same searchable text means the postings are already right (e.g. a reprice).
+    boolean sameText(AuctionListing previous, AuctionListing next) {
+        String[] text = fields.get(previous.id());
+        return text != null && previous.id().equals(next.id()) && Arrays.equals(text, fieldsOf(next));
+    }
+
+    void clear() {
+        postings.clear();
+        fields.clear();
+    }
+
+    List<UUID> search(String query) {
+        String needle = normalize(query);
+        List<UUID> out = new ArrayList<>();
+        if (needle.isBlank()) {
+            return out;
+        }
+        if (needle.length() < 3) {
+            // Too short for a trigram; every listing is a candidate.
+            fields.forEach((id, text) -> {
+                if (containsIn(text, needle)) {
+                    out.add(id);
+                }
+            });
+            return out;
+        }
+
+        List<Set<UUID>> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            Set<UUID> ids = postings.get(pack(needle, i));
+            if (ids == null) {
+                return out;
+            }
+            lists.add(ids);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        for (UUID id : lists.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = lists.get(i).contains(id);
+            }
+            if (inAll && containsIn(fields.get(id), needle)) {
+                out.add(id);
+            }
+        }
+        return out;
+    }
+
+    private static String[] fieldsOf(AuctionListing listing) {
+        StoredItem item = listing.item();
+        return new String[]{
+                normalize(item.material().name()),
+                normalize(listing.sellerName()),
+                normalize(COLOR_CODES.matcher(item.displayName()).replaceAll("")),
+                normalize(item.enchants())
+        };
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).replace('_', ' ');
+    }
+
+    private static boolean containsIn(String[] text, String needle) {
+        if (text == null) {
+            return false;
+        }
+        for (String field : text) {
+            if (field.contains(needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Trigrams never span two fields.
+    private static Set<Long> trigrams(String[] text) {
+        Set<Long> out = new HashSet<>();
+        for (String field : text) {
+            for (int i = 0; i + 3 <= field.length(); i++) {
+                out.add(pack(field, i));
+            }
+        }
+        return out;
+    }
+
+    private static long pack(String text, int from) {
+        return ((long) text.charAt(from) << 32) | ((long) text.charAt(from + 1) << 16) | text.charAt(from + 2);
+    }
+}
@@ -0,0 +1,442 @@
+package com.siberanka.donutauctions.auction;
+
+import com.siberanka.donutauctions.util.AtomicFileUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+// Purchases whose money is moving right now. Every stage is durable before the next economy call,
+// so after a crash the startup reconciliation knows how far each one got: RESERVED moved nothing,
+// WITHDRAWN charged the buyer only, PAID also paid the seller, DELIVERED also handed the item out.
+// Entries leave once the sale itself is durable or has been undone.
+// The file is an append-only log: [magic][version] then frames of [int length][body][int crc32c(body)],
+// where a body puts or removes one entry. Appends only take the ledger lock long enough to write
+// their frame; the fsync runs under its own lock and covers every frame written before it, so
+// concurrent settlements share one. Load and checkpoints rewrite the log down to the open entries.
+final class SettlementLedger {
+
+    enum Stage {
+        RESERVED,
+        WITHDRAWN,
+        PAID,
+        DELIVERED
+    }
+
+    // What startup reconciliation does with an entry a crash left behind.
+    enum Recovery {
+        FORGET,
+        REFUND,
+        DELIVER_AND_COMPLETE,
+        COMPLETE
+    }
+
+    record Entry(UUID listingId, UUID buyer, String buyerName, UUID seller, double price, Stage stage) {
+
+        Entry advance(Stage next) {
+            return new Entry(listingId, buyer, buyerName, seller, price, next);
+        }
+
+        // A listing that is no longer stored means the sale reached storage before the crash; the
+        // item is only ever delivered from a PAID entry, so it cannot go out twice.
+        Recovery recovery(boolean listingStored) {
+            return switch (stage) {
+                case RESERVED -> Recovery.FORGET;
+                case WITHDRAWN -> Recovery.REFUND;
+                case PAID -> listingStored ? Recovery.DELIVER_AND_COMPLETE : Recovery.FORGET;
+                case DELIVERED -> listingStored ? Recovery.COMPLETE : Recovery.FORGET;
+            };
+        }
+    }
+
+    private static final int MAGIC = 0x4441534C;
+    // Version 1 was a single checksummed snapshot of every entry; it is still read once and rewritten.
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 6;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final int MAX_FRAME_BYTES = 64 * 1024;
+    private static final long COMPACT_BYTES = 64L * 1024L;
+
+    private final Path file;
+    private final Map<UUID, Entry> entries = new LinkedHashMap<>();
+    // Entries whose durable removal failed. They stay in entries, so nothing treats them as gone,
+    // and the next compaction leaves them out of the rewritten log.
+    private final Set<UUID> removing = new HashSet<>();
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private long logBytes;
+    // Frames written so far, and how many of them an fsync has covered (guarded by syncLock).
+    private long appended;
+    private long synced;
+
+    SettlementLedger(Path file) {
+        this.file = file;
+    }
+
+    // A file with a damaged header is moved aside rather than overwritten; a torn last frame is
+    // what a crash mid-append leaves behind and is simply dropped.
+    void load() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closeChannel();
+                entries.clear();
+                removing.clear();
+                IOException damaged = null;
+                if (Files.exists(file)) {
+                    try {
+                        decode(Files.readAllBytes(file));
+                    } catch (IOException ex) {
+                        entries.clear();
+                        Files.move(file, file.resolveSibling(file.getFileName() + ".damaged-" + System.currentTimeMillis()));
+                        damaged = ex;
+                    }
+                }
+                // A fresh log is started either way, so purchases keep working after a damaged one.
+                rewrite();
+                if (damaged != null) {
+                    throw damaged;
+                }
+            }
+        }
+    }
+
+    synchronized List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    // Durable when this returns; on failure the entry is back to what it was.
+    void put(Entry entry) throws IOException {
+        Entry previous;
+        long frame;
+        synchronized (this) {
+            previous = entries.put(entry.listingId(), entry);
+            try {
+                frame = append(putFrame(entry));
+            } catch (IOException ex) {
+                restore(entry.listingId(), previous);
+                throw ex;
+            }
+            removing.remove(entry.listingId());
+        }
+        try {
+            sync(frame);
+        } catch (IOException ex) {
+            long undo = 0L;
+            synchronized (this) {
+                restore(entry.listingId(), previous);
+                try {
+                    undo = append(previous == null ? removeFrame(entry.listingId()) : putFrame(previous));
+                } catch (IOException ignored) {
+                }
+            }
+            // Best effort: the fsync just failed, so this one likely does too. That is still safe,
+            // because the new stage only ever runs ahead of money that has not moved yet: a stale
+            // RESERVED replays as nothing, and every caller that puts money back afterwards ends
+            // with a durable remove, which covers this frame as well.
+            if (undo > 0L) {
+                try {
+                    sync(undo);
+                } catch (IOException ignored) {
+                }
+            }
+            throw ex;
+        }
+    }
+
+    // Only a removal that must not be replayed, such as one after a refund, waits for the disk; the
+    // rest ride along with the next fsync or checkpoint. When a durable removal fails the entry is
+    // kept, the caller keeps its listing held, and the next compaction completes the removal.
+    void remove(UUID listingId, boolean durable) throws IOException {
+        long frame;
+        synchronized (this) {
+            if (!entries.containsKey(listingId)) {
+                return;
+            }
+            if (removing.contains(listingId)) {
+                if (durable) {
+                    throw new IOException("settlement removal is still pending");
+                }
+                return;
+            }
+            if (durable) {
+                // Marked first, so a compaction racing the fsync below cannot write the entry back.
+                removing.add(listingId);
+            }
+            try {
+                frame = append(removeFrame(listingId));
+            } catch (IOException ex) {
+                removing.add(listingId);
+                if (durable) {
+                    throw ex;
+                }
+                return;
+            }
+            if (!durable) {
+                entries.remove(listingId);
+                return;
+            }
+        }
+        sync(frame);
+        synchronized (this) {
+            entries.remove(listingId);
+            removing.remove(listingId);
+        }
+    }
+
+    // Rewrites the log down to the open entries; cheap, since few purchases are ever in flight.
+    // Returns the listings whose pending removal this made durable.
+    List<UUID> compact() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                return rewrite();
+            }
+        }
+    }
+
+    List<UUID> compactIfLarge() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (logBytes >= COMPACT_BYTES || !removing.isEmpty()) {
+                    return rewrite();
+                }
+                return List.of();
+            }
+        }
+    }
+
+    void close() {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closeChannel();
+            }
+        }
+    }
+
+    private void restore(UUID listingId, Entry previous) {
+        if (previous == null) {
+            entries.remove(listingId);
+        } else {
+            entries.put(listingId, previous);
+        }
+    }
+
+    // Returns the frame's sequence number for sync.
+    private long append(byte[] body) throws IOException {
+        if (channel == null) {
+            throw new IOException("settlement ledger is closed");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        ByteBuffer frame = ByteBuffer.allocate(body.length + 8);
+        frame.putInt(body.length).put(body).putInt((int) crc.getValue()).flip();
+        long before = logBytes;
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException ex) {
+            // Cut off the partial frame so later appends are not hidden behind it.
+            try {
+                channel.truncate(before);
+            } catch (IOException ignored) {
+            }
+            throw ex;
+        }
+        logBytes += body.length + 8L;
+        return ++appended;
+    }
+
+    private void sync(long frame) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= frame) {
+                return;
+            }
+            FileChannel target;
+            long covered;
+            synchronized (this) {
+                target = channel;
+                covered = appended;
+            }
+            if (target == null) {
+                throw new IOException("settlement ledger is closed");
+            }
+            target.force(false);
+            synced = covered;
+        }
+    }
+
+    // Caller holds syncLock and this. The old log stays open until the new one is in place.
+    private List<UUID> rewrite() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        for (Entry entry : entries.values()) {
+            if (removing.contains(entry.listingId())) {
+                continue;
+            }
+            byte[] body = putFrame(entry);
+            CRC32C crc = new CRC32C();
+            crc.update(body);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt((int) crc.getValue());
+        }
+        out.flush();
+        byte[] data = bytes.toByteArray();
+        AtomicFileUtil.writeAtomically(file, target -> target.write(data));
+        closeChannel();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logBytes = data.length;
+        synced = appended;
+        List<UUID> removed = new ArrayList<>(removing);
+        entries.keySet().removeAll(removing);
+        removing.clear();
+        return removed;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException ignored) {
+        } finally {
+            channel = null;
+        }
+    }
+
+    private static byte[] putFrame(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_PUT);
+            writeEntry(out, entry);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] removeFrame(UUID listingId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_REMOVE);
+            AuctionSnapshotCodec.writeUuid(out, listingId);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        AuctionSnapshotCodec.writeUuid(out, entry.listingId());
+        AuctionSnapshotCodec.writeUuid(out, entry.buyer());
+        out.writeUTF(entry.buyerName() == null ? "" : entry.buyerName());
+        AuctionSnapshotCodec.writeUuid(out, entry.seller());
+        out.writeDouble(entry.price());
+        out.writeByte(entry.stage().ordinal());
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        UUID listingId = AuctionSnapshotCodec.readUuid(in);
+        UUID buyer = AuctionSnapshotCodec.readUuid(in);
+        String buyerName = in.readUTF();
+        UUID seller = AuctionSnapshotCodec.readUuid(in);
+        double price = in.readDouble();
+        int stage = in.readUnsignedByte();
+        Stage[] stages = Stage.values();
+        if (stage >= stages.length) {
+            throw new IOException("invalid settlement stage " + stage);
+        }
+        return new Entry(listingId, buyer, buyerName, seller, price, stages[stage]);
+    }
+
+    private void decode(byte[] data) throws IOException {
+        if (data.length < HEADER_BYTES) {
+            throw new IOException("settlement ledger is truncated");
+        }
+        ByteBuffer header = ByteBuffer.wrap(data);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("not a settlement ledger");
+        }
+        int version = Short.toUnsignedInt(header.getShort());
+        if (version == SNAPSHOT_VERSION) {
+            decodeSnapshot(data);
+        } else if (version == VERSION) {
+            replay(data);
+        } else {
+            throw new IOException("unsupported settlement ledger version " + version);
+        }
+    }
+
+    private void replay(byte[] data) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, HEADER_BYTES, data.length - HEADER_BYTES));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_FRAME_BYTES) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                int expected = in.readInt();
+                CRC32C crc = new CRC32C();
+                crc.update(body);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                DataInputStream frame = new DataInputStream(new ByteArrayInputStream(body));
+                switch (frame.readByte()) {
+                    case TYPE_PUT -> {
+                        Entry entry = readEntry(frame);
+                        entries.put(entry.listingId(), entry);
+                    }
+                    case TYPE_REMOVE -> entries.remove(AuctionSnapshotCodec.readUuid(frame));
+                    default -> {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException torn) {
+            // The last frame was only partially written before a crash.
+        }
+    }
+
+    private void decodeSnapshot(byte[] data) throws IOException {
+        if (data.length < 14) {
+            throw new IOException("settlement ledger is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data).getInt(data.length - 4)) {
+            throw new IOException("settlement ledger checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, HEADER_BYTES, data.length - HEADER_BYTES - 4));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Entry entry = readEntry(in);
+            entries.put(entry.listingId(), entry);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.siberanka.donutauctions.auction;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+// Orders the book can serve pages in. Every mode maps to one maintained index in ListingBook,
+// walked forwards or backwards; the listing id breaks ties so index keys stay unique.
+public enum SortMode {
+    NEWEST("newest"),
+    OLDEST("oldest"),
+    PRICE_LOW("price_low"),
+    PRICE_HIGH("price_high"),
+    ENDING_SOON("ending_soon"),
+    PRICE_PER_UNIT("price_per_unit");
+
+    static final Comparator<AuctionListing> BY_CREATED = Comparator.comparing(AuctionListing::createdAt)
+            .thenComparing(AuctionListing::id);
+    static final Comparator<AuctionListing> BY_PRICE = Comparator.comparingDouble(AuctionListing::price)
+            .thenComparing(AuctionListing::id);
+    static final Comparator<AuctionListing> BY_EXPIRY = Comparator.comparing(AuctionListing::expiresAt)
+            .thenComparing(AuctionListing::id);
+    static final Comparator<AuctionListing> BY_UNIT_PRICE = Comparator.comparingDouble(SortMode::unitPrice)
+            .thenComparing(AuctionListing::id);
+
+    private final String id;
+
+    SortMode(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public Comparator<AuctionListing> comparator() {
+        return switch (this) {
+            case NEWEST -> BY_CREATED.reversed();
+            case OLDEST -> BY_CREATED;
+            case PRICE_LOW -> BY_PRICE;
+            case PRICE_HIGH -> BY_PRICE.reversed();
+            case ENDING_SOON -> BY_EXPIRY;
+            case PRICE_PER_UNIT -> BY_UNIT_PRICE;
+        };
+    }
+
+    public SortMode next() {
+        SortMode[] modes = values();
+        return modes[(ordinal() + 1) % modes.length];
+    }
+
+    public static SortMode fromId(String id) {
+        if (id != null) {
+            String normalized = id.toLowerCase(Locale.ROOT);
+            for (SortMode mode : values()) {
+                if (mode.id.equals(normalized)) {
+                    return mode;
+                }
+            }
+        }
+        return NEWEST;
+    }
+
+    static double unitPrice(AuctionListing listing) {
+        return listing.price() / Math.max(1, listing.item().amount());
+    }
+}
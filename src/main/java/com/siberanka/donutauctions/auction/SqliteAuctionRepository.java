@@ -0,0 +1,465 @@
+package com.siberanka.donutauctions.auction;
+
+import com.siberanka.donutauctions.DonutAuctionsPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// Row-per-listing store on the SQLite driver bundled with the server. Every mutation is a single
+// indexed insert/update/delete, so there is no whole-book rewrite; a full resync only runs after a
+// failed write.
+public final class SqliteAuctionRepository implements AuctionRepository {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS listings ("
+                    + "id TEXT PRIMARY KEY, seller TEXT NOT NULL, seller_name TEXT NOT NULL, price REAL NOT NULL, "
+                    + "created_at INTEGER NOT NULL, expires_at INTEGER NOT NULL, item BLOB NOT NULL, item_header BLOB)",
+            "CREATE INDEX IF NOT EXISTS listings_seller ON listings (seller)",
+            "CREATE INDEX IF NOT EXISTS listings_expires ON listings (expires_at)",
+            "CREATE TABLE IF NOT EXISTS transactions ("
+                    + "seq INTEGER PRIMARY KEY AUTOINCREMENT, auction_id TEXT NOT NULL, buyer TEXT NOT NULL, "
+                    + "buyer_name TEXT NOT NULL, seller TEXT NOT NULL, seller_name TEXT NOT NULL, "
+                    + "price REAL NOT NULL, at INTEGER NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS transactions_buyer ON transactions (buyer, seq)",
+            "CREATE INDEX IF NOT EXISTS transactions_seller ON transactions (seller, seq)",
+            "CREATE INDEX IF NOT EXISTS transactions_auction ON transactions (auction_id)"
+    };
+
+    private static final String INSERT_LISTING = "INSERT OR REPLACE INTO listings "
+            + "(id, seller, seller_name, price, created_at, expires_at, item, item_header) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TRANSACTION = "INSERT INTO transactions "
+            + "(auction_id, buyer, buyer_name, seller, seller_name, price, at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final DonutAuctionsPlugin plugin;
+    private final File file;
+    private Connection connection;
+    private volatile boolean resyncRequested;
+    // The thread whose group-commit batch holds the connection; everyone else waits for its commit
+    // instead of writing into (or reading from) the open transaction.
+    private Thread batchOwner;
+
+    public SqliteAuctionRepository(DonutAuctionsPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), plugin.getConfig().getString("storage.sqlite.file", "auction-data.db"));
+    }
+
+    @Override
+    public String backend() {
+        return "sqlite";
+    }
+
+    @Override
+    public synchronized List<AuctionListing> load(ForkJoinPool pool, AuctionSnapshotCodec.Timings timings) throws IOException {
+        try {
+            awaitBatch();
+            open();
+            long phase = System.nanoTime();
+            List<AuctionSnapshotCodec.PendingListing> pending = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT id, seller, seller_name, price, created_at, expires_at, item, item_header FROM listings")) {
+                while (rs.next()) {
+                    try {
+                        pending.add(new AuctionSnapshotCodec.PendingListing(
+                                UUID.fromString(rs.getString(1)),
+                                UUID.fromString(rs.getString(2)),
+                                rs.getString(3),
+                                rs.getDouble(4),
+                                Instant.ofEpochMilli(rs.getLong(5)),
+                                Instant.ofEpochMilli(rs.getLong(6)),
+                                rs.getBytes(7),
+                                StoredItem.decodeHeader(rs.getBytes(8))
+                        ));
+                    } catch (IllegalArgumentException | IOException ignored) {
+                    }
+                }
+            }
+            // Rows arrive already split into columns, so reading and parsing are one phase here.
+            timings.readNanos = System.nanoTime() - phase;
+
+            phase = System.nanoTime();
+            List<UUID> undecodable = new ArrayList<>();
+            List<AuctionListing> listings = AuctionSnapshotCodec.decodeAll(pending, pool, undecodable);
+            timings.decodeNanos = System.nanoTime() - phase;
+            if (!undecodable.isEmpty()) {
+                plugin.getLogger().warning("Skipped " + undecodable.size() + " listings with undecodable items: " + undecodable);
+            }
+            return listings;
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized boolean hasData() {
+        awaitBatch();
+        try (Statement statement = connection().createStatement();
+             ResultSet rs = statement.executeQuery("SELECT (SELECT COUNT(*) FROM listings) + (SELECT COUNT(*) FROM transactions)")) {
+            return rs.next() && rs.getLong(1) > 0L;
+        } catch (SQLException | IOException ex) {
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized void putListing(AuctionListing listing) throws IOException {
+        write(() -> {
+            try (PreparedStatement statement = connection().prepareStatement(INSERT_LISTING)) {
+                bindListing(statement, listing);
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public synchronized void removeListing(UUID listingId) throws IOException {
+        write(() -> deleteListing(listingId));
+    }
+
+    @Override
+    public synchronized void updatePrice(UUID listingId, double price) throws IOException {
+        write(() -> {
+            try (PreparedStatement statement = connection().prepareStatement("UPDATE listings SET price = ? WHERE id = ?")) {
+                statement.setDouble(1, price);
+                statement.setString(2, listingId.toString());
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public synchronized void recordSale(TransactionRecord transaction) throws IOException {
+        write(() -> inTransaction(() -> {
+            deleteListing(transaction.auctionId());
+            insertTransaction(transaction);
+        }));
+    }
+
+    @Override
+    public synchronized void appendTransaction(TransactionRecord transaction) throws IOException {
+        awaitBatch();
+        try {
+            insertTransaction(transaction);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized int transactionCount(UUID player) {
+        awaitBatch();
+        try (PreparedStatement statement = connection().prepareStatement(
+                "SELECT COUNT(*) FROM transactions WHERE buyer = ? OR seller = ?")) {
+            statement.setString(1, player.toString());
+            statement.setString(2, player.toString());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException | IOException ex) {
+            plugin.getLogger().warning("Transaction count failed safely: " + ex.getClass().getSimpleName());
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized List<TransactionRecord> transactionPage(UUID player, int offset, int limit) {
+        awaitBatch();
+        List<TransactionRecord> out = new ArrayList<>(Math.max(0, limit));
+        if (limit <= 0) {
+            return out;
+        }
+        try (PreparedStatement statement = connection().prepareStatement(
+                "SELECT auction_id, buyer, buyer_name, seller, seller_name, price, at FROM transactions "
+                        + "WHERE buyer = ? OR seller = ? ORDER BY seq DESC LIMIT ? OFFSET ?")) {
+            statement.setString(1, player.toString());
+            statement.setString(2, player.toString());
+            statement.setInt(3, limit);
+            statement.setInt(4, Math.max(0, offset));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    out.add(readTransaction(rs));
+                }
+            }
+        } catch (SQLException | IOException ex) {
+            plugin.getLogger().warning("Transaction page failed safely: " + ex.getClass().getSimpleName());
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void forEachTransaction(Consumer<TransactionRecord> action) {
+        awaitBatch();
+        try (Statement statement = connection().createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT auction_id, buyer, buyer_name, seller, seller_name, price, at FROM transactions ORDER BY seq")) {
+            while (rs.next()) {
+                action.accept(readTransaction(rs));
+            }
+        } catch (SQLException | IOException ex) {
+            plugin.getLogger().warning("Transaction scan failed safely: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public synchronized void replaceListings(List<AuctionListing> listings) throws IOException {
+        awaitBatch();
+        try {
+            inTransaction(() -> {
+                try (Statement statement = connection().createStatement()) {
+                    statement.executeUpdate("DELETE FROM listings");
+                }
+                try (PreparedStatement statement = connection().prepareStatement(INSERT_LISTING)) {
+                    for (AuctionListing listing : listings) {
+                        bindListing(statement, listing);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+            resyncRequested = false;
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public boolean checkpointDue() {
+        return resyncRequested;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (batchOwner == Thread.currentThread()) {
+            // The open batch becomes durable when it commits.
+            return;
+        }
+        awaitBatch();
+        try (Statement statement = connection().createStatement()) {
+            statement.execute("PRAGMA wal_checkpoint(PASSIVE)");
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void beginBatch() throws IOException {
+        awaitBatch();
+        try {
+            connection().setAutoCommit(false);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+        batchOwner = Thread.currentThread();
+    }
+
+    @Override
+    public synchronized void commitBatch() throws IOException {
+        if (batchOwner != Thread.currentThread()) {
+            return;
+        }
+        Connection conn = connection;
+        try {
+            if (conn == null) {
+                throw new IOException("sqlite repository is closed");
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            resyncRequested = true;
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw new IOException(ex);
+        } finally {
+            endBatch(conn);
+        }
+    }
+
+    // The resync runs here, under the service lock with the commit writer idle, so no queued write
+    // can land between its delete and re-insert; it only happens after a failed write.
+    @Override
+    public Checkpoint prepareCheckpoint(List<AuctionListing> listings) throws IOException {
+        if (resyncRequested) {
+            replaceListings(listings);
+        }
+        return this::flush;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+        // Closing with a batch still open rolls it back.
+        batchOwner = null;
+        notifyAll();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        } finally {
+            connection = null;
+        }
+    }
+
+    private void open() throws SQLException {
+        if (connection != null) {
+            return;
+        }
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("SQLite driver is not available", ex);
+        }
+        file.getParentFile().mkdirs();
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // FULL syncs the WAL on every commit; with group commit that is once per batch.
+            statement.execute("PRAGMA synchronous=FULL");
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+            // Databases created before item headers were stored; those rows are decoded once at load.
+            if (!hasColumn(statement, "listings", "item_header")) {
+                statement.execute("ALTER TABLE listings ADD COLUMN item_header BLOB");
+            }
+        }
+    }
+
+    private static boolean hasColumn(Statement statement, String table, String column) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Connection connection() throws IOException {
+        if (connection == null) {
+            throw new IOException("sqlite repository is closed");
+        }
+        return connection;
+    }
+
+    private void awaitBatch() {
+        boolean interrupted = false;
+        while (batchOwner != null && batchOwner != Thread.currentThread()) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void endBatch(Connection conn) {
+        batchOwner = null;
+        notifyAll();
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void write(SqlWork work) throws IOException {
+        awaitBatch();
+        try {
+            work.run();
+        } catch (SQLException | IOException ex) {
+            resyncRequested = true;
+            throw ex instanceof IOException io ? io : new IOException(ex);
+        }
+    }
+
+    private void inTransaction(SqlWork work) throws SQLException, IOException {
+        Connection conn = connection();
+        if (batchOwner == Thread.currentThread()) {
+            // Already inside our own batch; it commits for us.
+            work.run();
+            return;
+        }
+        conn.setAutoCommit(false);
+        try {
+            work.run();
+            conn.commit();
+        } catch (SQLException | IOException | RuntimeException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void deleteListing(UUID listingId) throws SQLException, IOException {
+        try (PreparedStatement statement = connection().prepareStatement("DELETE FROM listings WHERE id = ?")) {
+            statement.setString(1, listingId.toString());
+            statement.executeUpdate();
+        }
+    }
+
+    private void insertTransaction(TransactionRecord tx) throws SQLException, IOException {
+        try (PreparedStatement statement = connection().prepareStatement(INSERT_TRANSACTION)) {
+            statement.setString(1, tx.auctionId().toString());
+            statement.setString(2, tx.buyer().toString());
+            statement.setString(3, tx.buyerName());
+            statement.setString(4, tx.seller().toString());
+            statement.setString(5, tx.sellerName());
+            statement.setDouble(6, tx.price());
+            statement.setLong(7, tx.at().toEpochMilli());
+            statement.executeUpdate();
+        }
+    }
+
+    private static void bindListing(PreparedStatement statement, AuctionListing listing) throws SQLException, IOException {
+        statement.setString(1, listing.id().toString());
+        statement.setString(2, listing.sellerUuid().toString());
+        statement.setString(3, listing.sellerName());
+        statement.setDouble(4, listing.price());
+        statement.setLong(5, listing.createdAt().toEpochMilli());
+        statement.setLong(6, listing.expiresAt().toEpochMilli());
+        statement.setBytes(7, listing.item().bytes());
+        statement.setBytes(8, StoredItem.encodeHeader(listing.item().header()));
+    }
+
+    private static TransactionRecord readTransaction(ResultSet rs) throws SQLException {
+        return new TransactionRecord(
+                UUID.fromString(rs.getString(1)),
+                UUID.fromString(rs.getString(2)),
+                rs.getString(3),
+                UUID.fromString(rs.getString(4)),
+                rs.getString(5),
+                rs.getDouble(6),
+                Instant.ofEpochMilli(rs.getLong(7))
+        );
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException, IOException;
+    }
+}
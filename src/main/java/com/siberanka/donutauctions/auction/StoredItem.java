@@ -0,0 +1,194 @@
+package com.siberanka.donutauctions.auction;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.EnchantmentStorageMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// A listed item kept as its serialized bytes plus the few fields that filters, search and sorting
+// need. The ItemStack is only decoded when an icon is rendered or the item is handed out, and the
+// most recently decoded stacks are kept in a small LRU cache shared by all listings.
+public final class StoredItem {
+
+    public record Header(Material material, int amount, String enchants, String displayName) {
+    }
+
+    private static final int MAX_DISPLAY_NAME = 256;
+    private static final Object CACHE_LOCK = new Object();
+    private static int cacheCapacity = 1024;
+    private static final LinkedHashMap<StoredItem, ItemStack> DECODED = new LinkedHashMap<>(256, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StoredItem, ItemStack> eldest) {
+            return size() > cacheCapacity;
+        }
+    };
+    private static long hits;
+    private static long misses;
+
+    private final byte[] bytes;
+    private final Header header;
+
+    private StoredItem(byte[] bytes, Header header) {
+        this.bytes = bytes;
+        this.header = header;
+    }
+
+    public static StoredItem of(ItemStack item) {
+        ItemStack copy = item.clone();
+        StoredItem stored = new StoredItem(copy.serializeAsBytes(), header(copy));
+        cache(stored, copy);
+        return stored;
+    }
+
+    // Rebuilds an item from persisted bytes; without a stored header the bytes are decoded once to
+    // compute it. Returns null for items that decode to air.
+    static StoredItem restore(byte[] bytes, Header header) {
+        if (header != null) {
+            return new StoredItem(bytes, header);
+        }
+        ItemStack item = ItemStack.deserializeBytes(bytes);
+        if (item == null || item.getType() == Material.AIR) {
+            return null;
+        }
+        return new StoredItem(bytes, header(item));
+    }
+
+    public Material material() {
+        return header.material();
+    }
+
+    public int amount() {
+        return header.amount();
+    }
+
+    // Sorted "key:level" pairs, e.g. "sharpness:5,unbreaking:3"; empty when the item has none.
+    public String enchants() {
+        return header.enchants();
+    }
+
+    public String displayName() {
+        return header.displayName();
+    }
+
+    Header header() {
+        return header;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    // A fresh copy the caller may hand out or modify, or null if the stored bytes no longer decode.
+    public ItemStack materialize() {
+        ItemStack decoded;
+        synchronized (CACHE_LOCK) {
+            decoded = DECODED.get(this);
+            if (decoded != null) {
+                hits++;
+                return decoded.clone();
+            }
+            misses++;
+        }
+        try {
+            decoded = ItemStack.deserializeBytes(bytes);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+        if (decoded == null || decoded.getType() == Material.AIR) {
+            return null;
+        }
+        cache(this, decoded);
+        return decoded.clone();
+    }
+
+    public static void setCacheCapacity(int capacity) {
+        synchronized (CACHE_LOCK) {
+            cacheCapacity = Math.max(0, capacity);
+            if (DECODED.size() > cacheCapacity) {
+                DECODED.clear();
+            }
+        }
+    }
+
+    public static double cacheHitRate() {
+        synchronized (CACHE_LOCK) {
+            long total = hits + misses;
+            return total == 0 ? 0D : (double) hits / total;
+        }
+    }
+
+    private static void cache(StoredItem stored, ItemStack item) {
+        synchronized (CACHE_LOCK) {
+            if (cacheCapacity > 0) {
+                DECODED.put(stored, item);
+            }
+        }
+    }
+
+    static void writeHeader(DataOutputStream out, Header header) throws IOException {
+        out.writeUTF(header.material().name());
+        out.writeInt(header.amount());
+        out.writeUTF(header.enchants());
+        out.writeUTF(header.displayName());
+    }
+
+    // A material unknown to this server version yields null, so the caller falls back to decoding.
+    static Header readHeader(DataInputStream in) throws IOException {
+        String material = in.readUTF();
+        int amount = in.readInt();
+        String enchants = in.readUTF();
+        String displayName = in.readUTF();
+        Material type = Material.matchMaterial(material);
+        return type == null ? null : new Header(type, amount, enchants, displayName);
+    }
+
+    static byte[] encodeHeader(Header header) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        writeHeader(new DataOutputStream(buffer), header);
+        return buffer.toByteArray();
+    }
+
+    static Header decodeHeader(byte[] data) throws IOException {
+        return data == null ? null : readHeader(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    static Header header(ItemStack item) {
+        ItemMeta meta = item.getItemMeta();
+        Map<String, Integer> levels = new TreeMap<>();
+        String displayName = "";
+        if (meta != null) {
+            meta.getEnchants().forEach((enchantment, level) -> levels.put(key(enchantment), level));
+            if (meta instanceof EnchantmentStorageMeta book) {
+                book.getStoredEnchants().forEach((enchantment, level) -> levels.merge(key(enchantment), level, Math::max));
+            }
+            if (meta.hasDisplayName() && meta.getDisplayName() != null) {
+                displayName = meta.getDisplayName();
+                if (displayName.length() > MAX_DISPLAY_NAME) {
+                    displayName = displayName.substring(0, MAX_DISPLAY_NAME);
+                }
+            }
+        }
+        StringBuilder enchants = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : levels.entrySet()) {
+            if (!enchants.isEmpty()) {
+                enchants.append(',');
+            }
+            enchants.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return new Header(item.getType(), item.getAmount(), enchants.toString(), displayName);
+    }
+
+    private static String key(Enchantment enchantment) {
+        return enchantment.getKey().getKey();
+    }
+}
@@ -0,0 +1,269 @@
+package com.siberanka.donutauctions.auction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Append-only sale history. Segments are preallocated, memory-mapped files of fixed-width records;
+// the newest records are mirrored in a ring so recent history never touches the mapping.
+public final class TransactionArchive {
+
+    static final int RECORD_BYTES = 128;
+    static final int SEGMENT_RECORDS = 65_536;
+
+    private static final int NAME_BYTES = 29;
+    private static final int OFFSET_BUYER = 16;
+    private static final int OFFSET_SELLER = 32;
+    private static final int OFFSET_PRICE = 48;
+    private static final int OFFSET_AT = 56;
+    private static final int OFFSET_BUYER_NAME = 64;
+    private static final int OFFSET_SELLER_NAME = 94;
+    private static final int OFFSET_CRC = 124;
+
+    private final Path directory;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<UUID, Integer> perPlayer = new HashMap<>();
+    private TransactionRecord[] ring = new TransactionRecord[0];
+    private long total;
+    private int unforcedFrom = Integer.MAX_VALUE;
+
+    public TransactionArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    // Returns how many damaged slots were skipped. A damaged slot (e.g. a torn write) is passed over
+    // rather than taken as the end of the archive, so the records behind it stay readable and the
+    // next append goes after the last slot ever written; only never-written (all-zero) slots are free.
+    public synchronized int open(int recentCapacity) throws IOException {
+        segments.clear();
+        perPlayer.clear();
+        total = 0L;
+        ring = new TransactionRecord[Math.max(1, recentCapacity)];
+        Files.createDirectories(directory);
+
+        int damaged = 0;
+        for (int index = 0; Files.exists(segmentPath(index)); index++) {
+            MappedByteBuffer segment = map(index);
+            segments.add(segment);
+            for (int slot = 0; slot < SEGMENT_RECORDS; slot++) {
+                TransactionRecord record = decode(segment, slot);
+                if (record != null) {
+                    countParticipants(record);
+                } else if (!isBlank(segment, slot)) {
+                    damaged++;
+                } else {
+                    continue;
+                }
+                total = (long) index * SEGMENT_RECORDS + slot + 1;
+            }
+        }
+
+        long from = Math.max(0L, total - ring.length);
+        for (long seq = from; seq < total; seq++) {
+            ring[(int) (seq % ring.length)] = read(seq);
+        }
+        return damaged;
+    }
+
+    public synchronized boolean isEmpty() {
+        return total == 0L;
+    }
+
+    public synchronized long size() {
+        return total;
+    }
+
+    public synchronized void append(TransactionRecord record) throws IOException {
+        int index = (int) (total / SEGMENT_RECORDS);
+        int slot = (int) (total % SEGMENT_RECORDS);
+        while (segments.size() <= index) {
+            segments.add(map(segments.size()));
+        }
+        encode(segments.get(index), slot, record);
+        unforcedFrom = Math.min(unforcedFrom, index);
+        ring[(int) (total % ring.length)] = record;
+        total++;
+        countParticipants(record);
+    }
+
+    public synchronized void appendIfMissing(TransactionRecord record) throws IOException {
+        for (long seq = total - 1; seq >= 0; seq--) {
+            TransactionRecord existing = read(seq);
+            if (existing == null) {
+                continue;
+            }
+            if (existing.auctionId().equals(record.auctionId())) {
+                return;
+            }
+            if (existing.at().isBefore(record.at().minusSeconds(60))) {
+                break;
+            }
+        }
+        append(record);
+    }
+
+    public synchronized int count(UUID player) {
+        return perPlayer.getOrDefault(player, 0);
+    }
+
+    public synchronized List<TransactionRecord> page(UUID player, int offset, int limit) {
+        List<TransactionRecord> out = new ArrayList<>(Math.max(0, limit));
+        if (limit <= 0) {
+            return out;
+        }
+        long most = player.getMostSignificantBits();
+        long least = player.getLeastSignificantBits();
+        long ringFloor = Math.max(0L, total - ring.length);
+        int skipped = 0;
+        for (long seq = total - 1; seq >= 0 && out.size() < limit; seq--) {
+            boolean matches;
+            if (seq >= ringFloor) {
+                TransactionRecord record = ring[(int) (seq % ring.length)];
+                matches = record != null && (record.buyer().equals(player) || record.seller().equals(player));
+            } else {
+                matches = involves(seq, most, least);
+            }
+            if (!matches) {
+                continue;
+            }
+            // A damaged slot can still look like a match; it is not counted.
+            TransactionRecord record = seq >= ringFloor ? ring[(int) (seq % ring.length)] : read(seq);
+            if (record == null) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            out.add(record);
+        }
+        return out;
+    }
+
+    public synchronized void forEach(Consumer<TransactionRecord> action) {
+        for (long seq = 0; seq < total; seq++) {
+            TransactionRecord record = read(seq);
+            if (record != null) {
+                action.accept(record);
+            }
+        }
+    }
+
+    public synchronized void force() {
+        for (int index = unforcedFrom; index < segments.size(); index++) {
+            segments.get(index).force();
+        }
+        unforcedFrom = Integer.MAX_VALUE;
+    }
+
+    public synchronized void close() {
+        force();
+        segments.clear();
+        perPlayer.clear();
+        ring = new TransactionRecord[0];
+        total = 0L;
+    }
+
+    private boolean involves(long seq, long most, long least) {
+        MappedByteBuffer segment = segments.get((int) (seq / SEGMENT_RECORDS));
+        int base = (int) (seq % SEGMENT_RECORDS) * RECORD_BYTES;
+        return segment.getLong(base + OFFSET_BUYER) == most && segment.getLong(base + OFFSET_BUYER + 8) == least
+                || segment.getLong(base + OFFSET_SELLER) == most && segment.getLong(base + OFFSET_SELLER + 8) == least;
+    }
+
+    private TransactionRecord read(long seq) {
+        if (seq < 0 || seq >= total) {
+            return null;
+        }
+        return decode(segments.get((int) (seq / SEGMENT_RECORDS)), (int) (seq % SEGMENT_RECORDS));
+    }
+
+    private static boolean isBlank(MappedByteBuffer segment, int slot) {
+        int base = slot * RECORD_BYTES;
+        for (int offset = 0; offset < RECORD_BYTES; offset += Long.BYTES) {
+            if (segment.getLong(base + offset) != 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void countParticipants(TransactionRecord record) {
+        perPlayer.merge(record.buyer(), 1, Integer::sum);
+        perPlayer.merge(record.seller(), 1, Integer::sum);
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * RECORD_BYTES);
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("transactions-%06d.dat", index));
+    }
+
+    private static void encode(MappedByteBuffer segment, int slot, TransactionRecord record) {
+        byte[] buf = new byte[RECORD_BYTES];
+        ByteBuffer view = ByteBuffer.wrap(buf);
+        view.putLong(0, record.auctionId().getMostSignificantBits());
+        view.putLong(8, record.auctionId().getLeastSignificantBits());
+        view.putLong(OFFSET_BUYER, record.buyer().getMostSignificantBits());
+        view.putLong(OFFSET_BUYER + 8, record.buyer().getLeastSignificantBits());
+        view.putLong(OFFSET_SELLER, record.seller().getMostSignificantBits());
+        view.putLong(OFFSET_SELLER + 8, record.seller().getLeastSignificantBits());
+        view.putDouble(OFFSET_PRICE, record.price());
+        view.putLong(OFFSET_AT, record.at().toEpochMilli());
+        putName(buf, OFFSET_BUYER_NAME, record.buyerName());
+        putName(buf, OFFSET_SELLER_NAME, record.sellerName());
+        CRC32C crc = new CRC32C();
+        crc.update(buf, 0, OFFSET_CRC);
+        view.putInt(OFFSET_CRC, (int) crc.getValue());
+        segment.put(slot * RECORD_BYTES, buf);
+    }
+
+    private static TransactionRecord decode(MappedByteBuffer segment, int slot) {
+        byte[] buf = new byte[RECORD_BYTES];
+        segment.get(slot * RECORD_BYTES, buf);
+        CRC32C crc = new CRC32C();
+        crc.update(buf, 0, OFFSET_CRC);
+        ByteBuffer view = ByteBuffer.wrap(buf);
+        if ((int) crc.getValue() != view.getInt(OFFSET_CRC)) {
+            return null;
+        }
+        return new TransactionRecord(
+                new UUID(view.getLong(0), view.getLong(8)),
+                new UUID(view.getLong(OFFSET_BUYER), view.getLong(OFFSET_BUYER + 8)),
+                getName(buf, OFFSET_BUYER_NAME),
+                new UUID(view.getLong(OFFSET_SELLER), view.getLong(OFFSET_SELLER + 8)),
+                getName(buf, OFFSET_SELLER_NAME),
+                view.getDouble(OFFSET_PRICE),
+                Instant.ofEpochMilli(view.getLong(OFFSET_AT))
+        );
+    }
+
+    private static void putName(byte[] buf, int offset, String name) {
+        byte[] raw = (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(raw.length, NAME_BYTES);
+        buf[offset] = (byte) length;
+        System.arraycopy(raw, 0, buf, offset + 1, length);
+    }
+
+    private static String getName(byte[] buf, int offset) {
+        int length = Math.min(buf[offset] & 0xFF, NAME_BYTES);
+        return new String(buf, offset + 1, length, StandardCharsets.UTF_8);
+    }
+}
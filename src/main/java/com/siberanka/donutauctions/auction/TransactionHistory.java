@@ -0,0 +1,166 @@
+package com.siberanka.donutauctions.auction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// The newest sales of each player, kept in a bounded ring per player next to the full history in
+// the repository. Sales are pushed as they happen; a player's ring is filled from the repository
+// the first time their history is looked at, so the transactions menu pages from memory and a busy
+// trader never pushes anyone else's records out. All rings together hold at most budget records;
+// the players who looked or traded least recently are dropped first.
+final class TransactionHistory {
+
+    private static final class Ring {
+        private final ArrayDeque<TransactionRecord> newest = new ArrayDeque<>();
+        private int count;
+        private boolean loaded;
+    }
+
+    private final AuctionRepository repository;
+    private final LinkedHashMap<UUID, Ring> rings = new LinkedHashMap<>(64, 0.75F, true);
+    private int depth = 90;
+    private int budget = 50_000;
+    private int held;
+
+    TransactionHistory(AuctionRepository repository) {
+        this.repository = repository;
+    }
+
+    synchronized void configure(int depth, int budget) {
+        this.depth = Math.max(1, depth);
+        this.budget = Math.max(this.depth, budget);
+        clear();
+    }
+
+    synchronized void clear() {
+        rings.clear();
+        held = 0;
+    }
+
+    // The repository write may still be queued, so a ring that is not loaded yet keeps the record
+    // too and merges it with what the repository returns.
+    synchronized void record(TransactionRecord record) {
+        push(record.buyer(), record);
+        if (!record.seller().equals(record.buyer())) {
+            push(record.seller(), record);
+        }
+        trim();
+    }
+
+    int count(UUID player) {
+        Ring ring = ring(player);
+        synchronized (this) {
+            return ring.count;
+        }
+    }
+
+    List<TransactionRecord> page(UUID player, int offset, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        int from = Math.max(0, offset);
+        Ring ring = ring(player);
+        synchronized (this) {
+            if (from + limit <= ring.newest.size() || ring.newest.size() >= ring.count) {
+                List<TransactionRecord> out = new ArrayList<>(limit);
+                Iterator<TransactionRecord> walk = ring.newest.iterator();
+                for (int skipped = 0; skipped < from && walk.hasNext(); skipped++) {
+                    walk.next();
+                }
+                while (out.size() < limit && walk.hasNext()) {
+                    out.add(walk.next());
+                }
+                return out;
+            }
+        }
+        // Older than anything kept in memory.
+        return repository.transactionPage(player, from, limit);
+    }
+
+    // The repository is read outside the monitor so record() and other players' reads never wait
+    // on it; whoever publishes first wins and a concurrent loader just uses that ring.
+    private Ring ring(UUID player) {
+        int limit;
+        synchronized (this) {
+            Ring ring = rings.get(player);
+            if (ring != null && ring.loaded) {
+                return ring;
+            }
+            limit = depth;
+        }
+        int count = repository.transactionCount(player);
+        List<TransactionRecord> stored = repository.transactionPage(player, 0, limit);
+        synchronized (this) {
+            return publish(player, count, stored);
+        }
+    }
+
+    private Ring publish(UUID player, int count, List<TransactionRecord> stored) {
+        Ring ring = rings.get(player);
+        if (ring != null && ring.loaded) {
+            return ring;
+        }
+        if (ring == null) {
+            ring = new Ring();
+            rings.put(player, ring);
+        }
+        // Anything pushed before the load that the repository does not have yet stays on top.
+        List<TransactionRecord> pending = new ArrayList<>();
+        for (TransactionRecord record : ring.newest) {
+            if (!containsSale(stored, record)) {
+                pending.add(record);
+            }
+        }
+        held -= ring.newest.size();
+        ring.newest.clear();
+        ring.newest.addAll(pending);
+        for (TransactionRecord record : stored) {
+            if (ring.newest.size() >= depth) {
+                break;
+            }
+            ring.newest.addLast(record);
+        }
+        held += ring.newest.size();
+        ring.count = count + pending.size();
+        ring.loaded = true;
+        trim();
+        return ring;
+    }
+
+    private void push(UUID player, TransactionRecord record) {
+        Ring ring = rings.computeIfAbsent(player, id -> new Ring());
+        if (containsSale(ring.newest, record)) {
+            return;
+        }
+        ring.newest.addFirst(record);
+        ring.count++;
+        held++;
+        if (ring.newest.size() > depth) {
+            ring.newest.removeLast();
+            held--;
+        }
+    }
+
+    // Least recently used players go first; the ring just touched is always kept.
+    private void trim() {
+        Iterator<Map.Entry<UUID, Ring>> eldest = rings.entrySet().iterator();
+        while (held > budget && rings.size() > 1 && eldest.hasNext()) {
+            held -= eldest.next().getValue().newest.size();
+            eldest.remove();
+        }
+    }
+
+    private static boolean containsSale(Iterable<TransactionRecord> records, TransactionRecord record) {
+        for (TransactionRecord existing : records) {
+            if (existing.auctionId().equals(record.auctionId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
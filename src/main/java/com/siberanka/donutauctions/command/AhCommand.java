@@ -3,10 +3,15 @@ package com.siberanka.donutauctions.command;
 import com.siberanka.donutauctions.DonutAuctionsPlugin;
 import com.siberanka.donutauctions.auction.AuctionListing;
 import com.siberanka.donutauctions.auction.AuctionService;
+import com.siberanka.donutauctions.auction.GroupCommitWriter;
+import com.siberanka.donutauctions.auction.MarketStats;
+import com.siberanka.donutauctions.auction.ReclaimStore;
+import com.siberanka.donutauctions.auction.StoredItem;
 import com.siberanka.donutauctions.config.LanguageManager;
 import com.siberanka.donutauctions.gui.AuctionMenuService;
 import com.siberanka.donutauctions.hook.EconomyHook;
 import com.siberanka.donutauctions.hook.UltimateShopHook;
+import com.siberanka.donutauctions.util.SchedulerAdapter;
 import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -27,6 +32,8 @@ import java.util.concurrent.ConcurrentMap;
 
 public final class AhCommand implements CommandExecutor, TabCompleter {
 
+    private static final List<String> STORAGE_BACKENDS = List.of("file", "sqlite");
+
     private final DonutAuctionsPlugin plugin;
     private final LanguageManager lang;
     private final AuctionService auctionService;
@@ -72,6 +79,7 @@ public final class AhCommand implements CommandExecutor, TabCompleter {
         switch (sub) {
             case "sell" -> handleSell(player, args);
             case "my", "myitems" -> menuService.openMyItems(player, 1);
+            case "reclaim" -> handleReclaim(player);
             case "transactions", "tx" -> menuService.openTransactions(player, 1);
             case "reload" -> {
                 if (!player.hasPermission("donutauctions.admin.reload")) {
@@ -81,6 +89,8 @@ public final class AhCommand implements CommandExecutor, TabCompleter {
                 plugin.reloadPluginState();
                 player.sendMessage(lang.text("messages.reloaded"));
             }
+            case "migrate" -> handleMigrate(player, args);
+            case "diagnostics", "diag" -> handleDiagnostics(player);
             default -> player.sendMessage(lang.text("messages.unknown-subcommand"));
         }
 
@@ -139,6 +149,7 @@ public final class AhCommand implements CommandExecutor, TabCompleter {
             }
             price = suggested.getAsDouble();
             player.sendMessage(lang.text("messages.price-forced-suggested", Map.of("price", economy.format(price))));
+            sendMarketRate(player, auctionService.marketRate(toList));
         } else if (args.length >= 2) {
             try {
                 price = Double.parseDouble(args[1]);
@@ -148,12 +159,19 @@ public final class AhCommand implements CommandExecutor, TabCompleter {
             }
         } else {
             OptionalDouble suggested = ultimateShop.suggestAuctionPrice(toList, player);
-            if (suggested.isEmpty()) {
+            Optional<MarketStats.Rate> rate = auctionService.marketRate(toList);
+            sendMarketRate(player, rate);
+            if (suggested.isPresent()) {
+                price = suggested.getAsDouble();
+                player.sendMessage(lang.text("messages.price-suggested", Map.of("price", economy.format(price))));
+            } else if (rate.isPresent() && plugin.getConfig().getBoolean("auction.market.suggest-price", true)) {
+                // No shop price; fall back to what the same item has been selling for.
+                price = rate.get().median() * amountToSell;
+                player.sendMessage(lang.text("messages.price-suggested-market", Map.of("price", economy.format(price))));
+            } else {
                 player.sendMessage(lang.text("messages.price-required"));
                 return;
             }
-            price = suggested.getAsDouble();
-            player.sendMessage(lang.text("messages.price-suggested", Map.of("price", economy.format(price))));
         }
 
         if (!Double.isFinite(price) || price <= 0) {
@@ -194,10 +212,115 @@ public final class AhCommand implements CommandExecutor, TabCompleter {
         menuService.openAuction(player, 1);
     }
 
+    // Hands back expired listings one by one while there is a free slot; the rest stay stored.
+    private void handleReclaim(Player player) {
+        List<ReclaimStore.Entry> entries = auctionService.reclaimable(player.getUniqueId());
+        if (entries.isEmpty()) {
+            player.sendMessage(lang.text("messages.reclaim-empty"));
+            return;
+        }
+        int returned = 0;
+        for (ReclaimStore.Entry entry : entries) {
+            if (player.getInventory().firstEmpty() == -1) {
+                break;
+            }
+            ItemStack item = entry.item().materialize();
+            if (item == null) {
+                plugin.getLogger().warning("Reclaimed listing " + entry.listingId() + " has an undecodable item; left in storage.");
+                continue;
+            }
+            if (!auctionService.claimReclaimed(player.getUniqueId(), entry.listingId())) {
+                continue;
+            }
+            Map<Integer, ItemStack> overflow = player.getInventory().addItem(item);
+            if (!overflow.isEmpty()) {
+                overflow.values().forEach(stack -> player.getWorld().dropItemNaturally(player.getLocation(), stack));
+            }
+            returned++;
+        }
+        int remaining = auctionService.reclaimableCount(player.getUniqueId());
+        player.sendMessage(lang.text("messages.reclaim-done", Map.of("count", String.valueOf(returned))));
+        if (remaining > 0) {
+            player.sendMessage(lang.text("messages.reclaim-inventory-full", Map.of("remaining", String.valueOf(remaining))));
+        }
+    }
+
+    private void sendMarketRate(Player player, Optional<MarketStats.Rate> rate) {
+        if (rate.isEmpty()) {
+            return;
+        }
+        String window = auctionService.marketWindow().name().toLowerCase(Locale.ROOT);
+        player.sendMessage(lang.text("messages.market-rate", Map.of(
+                "window", lang.rawString("gui.market-windows." + window, window),
+                "median", economy.format(rate.get().median()),
+                "average", economy.format(rate.get().average()),
+                "units", String.valueOf(rate.get().units()),
+                "last", economy.format(rate.get().lastPrice())
+        )));
+    }
+
+    private void handleDiagnostics(Player player) {
+        if (!player.hasPermission("donutauctions.admin.diagnostics")) {
+            player.sendMessage(lang.text("messages.no-permission"));
+            return;
+        }
+        GroupCommitWriter.Stats stats = auctionService.groupCommitStats();
+        player.sendMessage(lang.text("messages.diagnostics-storage", Map.of(
+                "backend", auctionService.storageBackend(),
+                "listings", String.valueOf(auctionService.listingCount()),
+                "item_cache", String.format(Locale.ROOT, "%.1f", StoredItem.cacheHitRate() * 100D),
+                "query_cache", String.format(Locale.ROOT, "%.1f", auctionService.queryCacheHitRate() * 100D)
+        )));
+        player.sendMessage(lang.text("messages.diagnostics-group-commit", Map.of(
+                "batches", String.valueOf(stats.batches()),
+                "writes", String.valueOf(stats.writes()),
+                "avg_batch", String.format(Locale.ROOT, "%.1f", stats.avgBatch()),
+                "max_batch", String.valueOf(stats.maxBatch()),
+                "pending", String.valueOf(stats.pending())
+        )));
+        player.sendMessage(lang.text("messages.diagnostics-fsync", Map.of(
+                "avg_fsync", String.valueOf(stats.avgFsyncMicros()),
+                "max_fsync", String.valueOf(stats.maxFsyncMicros()),
+                "avg_latency", String.valueOf(stats.avgLatencyMicros()),
+                "max_latency", String.valueOf(stats.maxLatencyMicros()),
+                "failures", String.valueOf(stats.failures())
+        )));
+    }
+
+    private void handleMigrate(Player player, String[] args) {
+        if (!player.hasPermission("donutauctions.admin.migrate")) {
+            player.sendMessage(lang.text("messages.no-permission"));
+            return;
+        }
+        String backend = args.length >= 2 ? args[1].toLowerCase(Locale.ROOT) : "";
+        if (!STORAGE_BACKENDS.contains(backend)) {
+            player.sendMessage(lang.text("messages.migrate-usage"));
+            return;
+        }
+        player.sendMessage(lang.text("messages.migrate-started", Map.of("backend", backend)));
+        SchedulerAdapter.runAsync(plugin, () -> {
+            try {
+                AuctionService.MigrationResult result = auctionService.migrateTo(backend);
+                player.sendMessage(lang.text("messages.migrate-done", Map.of(
+                        "backend", backend,
+                        "listings", String.valueOf(result.listings()),
+                        "transactions", String.valueOf(result.transactions())
+                )));
+            } catch (Exception ex) {
+                plugin.getLogger().warning("Storage migration to " + backend + " failed safely: " + ex.getClass().getSimpleName());
+                String reason = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+                player.sendMessage(lang.text("messages.migrate-failed", Map.of("backend", backend, "reason", reason)));
+            }
+        });
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
-            return partial(args[0], List.of("sell", "my", "transactions", "reload"));
+            return partial(args[0], List.of("sell", "my", "reclaim", "transactions", "reload", "migrate", "diagnostics"));
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("migrate")) {
+            return partial(args[1], STORAGE_BACKENDS);
         }
         return List.of();
     }
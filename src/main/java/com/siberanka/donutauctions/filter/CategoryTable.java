@@ -0,0 +1,78 @@
+package com.siberanka.donutauctions.filter;
+
+import org.bukkit.Material;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// filters.yml compiled into one membership bitmask per Material, so a category check is an array
+// lookup and a bit test. Immutable: a reload compiles a new table and swaps it in whole.
+public final class CategoryTable {
+
+    public static final int MAX_CATEGORIES = Long.SIZE;
+    public static final CategoryTable EMPTY = new CategoryTable(Map.of(), new long[0]);
+
+    private final Map<String, Integer> bits;
+    private final long[] masks;
+
+    private CategoryTable(Map<String, Integer> bits, long[] masks) {
+        this.bits = bits;
+        this.masks = masks;
+    }
+
+    // "all" matches everything and gets no bit; rules past MAX_CATEGORIES are left out.
+    static CategoryTable compile(Collection<FilterManager.FilterRule> rules) {
+        Map<String, Integer> bits = new HashMap<>();
+        Material[] materials = Material.values();
+        long[] masks = new long[materials.length];
+        for (FilterManager.FilterRule rule : rules) {
+            if (rule.id().equals("all") || bits.size() >= MAX_CATEGORIES) {
+                continue;
+            }
+            int bit = bits.size();
+            bits.put(rule.id(), bit);
+            for (Material material : materials) {
+                if (rule.materials().contains(material) || containsKeyword(material, rule)) {
+                    masks[material.ordinal()] |= 1L << bit;
+                }
+            }
+        }
+        return new CategoryTable(Map.copyOf(bits), masks);
+    }
+
+    public int size() {
+        return bits.size();
+    }
+
+    // Bit index of a category, or -1 for "all" and unknown ids.
+    public int bit(String filterId) {
+        Integer bit = filterId == null ? null : bits.get(filterId);
+        return bit == null ? -1 : bit;
+    }
+
+    public long mask(Material material) {
+        if (material == null || material.ordinal() >= masks.length) {
+            return 0L;
+        }
+        return masks[material.ordinal()];
+    }
+
+    public boolean matches(int bit, Material material) {
+        return bit < 0 || (mask(material) & (1L << bit)) != 0L;
+    }
+
+    private static boolean containsKeyword(Material material, FilterManager.FilterRule rule) {
+        if (rule.contains().isEmpty()) {
+            return false;
+        }
+        String name = material.name().toLowerCase(Locale.ROOT);
+        for (String keyword : rule.contains()) {
+            if (name.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -4,12 +4,11 @@ import com.siberanka.donutauctions.DonutAuctionsPlugin;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.inventory.ItemStack;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -19,17 +18,20 @@ public final class FilterManager {
     public record FilterRule(String id, List<Material> materials, List<String> contains) {
     }
 
+    // Rules, order and the compiled table are swapped together, so readers never mix two reloads.
+    private record State(Map<String, FilterRule> rules, List<String> order, CategoryTable table) {
+    }
+
     private final DonutAuctionsPlugin plugin;
-    private final Map<String, FilterRule> rules = new HashMap<>();
-    private final List<String> order = new ArrayList<>();
+    private volatile State state = new State(Map.of(), List.of("all"), CategoryTable.EMPTY);
 
     public FilterManager(DonutAuctionsPlugin plugin) {
         this.plugin = plugin;
     }
 
     public void reload() {
-        rules.clear();
-        order.clear();
+        Map<String, FilterRule> rules = new LinkedHashMap<>();
+        List<String> order = new ArrayList<>();
 
         File file = new File(plugin.getDataFolder(), "filters.yml");
         YamlConfiguration cfg = YamlConfiguration.loadConfiguration(file);
@@ -43,9 +45,8 @@ public final class FilterManager {
 
         ConfigurationSection filters = cfg.getConfigurationSection("filters");
         if (filters == null) {
-            order.clear();
-            order.add("all");
             rules.put("all", new FilterRule("all", List.of(), List.of()));
+            state = new State(Map.copyOf(rules), List.of("all"), CategoryTable.EMPTY);
             return;
         }
 
@@ -83,10 +84,20 @@ public final class FilterManager {
         if (order.isEmpty()) {
             order.add("all");
         }
+
+        CategoryTable table = CategoryTable.compile(rules.values());
+        if (rules.size() - 1 > CategoryTable.MAX_CATEGORIES) {
+            plugin.getLogger().warning("filters.yml defines more than " + CategoryTable.MAX_CATEGORIES + " filters; the extra ones match nothing.");
+        }
+        state = new State(Collections.unmodifiableMap(rules), List.copyOf(order), table);
     }
 
     public List<String> order() {
-        return Collections.unmodifiableList(order);
+        return state.order();
+    }
+
+    public CategoryTable categories() {
+        return state.table();
     }
 
     public String normalizeFilter(String input) {
@@ -94,11 +105,12 @@ public final class FilterManager {
             return "all";
         }
         String id = input.toLowerCase(Locale.ROOT);
-        return rules.containsKey(id) ? id : "all";
+        return state.rules().containsKey(id) ? id : "all";
     }
 
     public String nextFilter(String current) {
         String active = normalizeFilter(current);
+        List<String> order = state.order();
         int idx = order.indexOf(active);
         if (idx < 0) {
             return "all";
@@ -106,27 +118,13 @@ public final class FilterManager {
         return order.get((idx + 1) % order.size());
     }
 
-    public boolean matches(String filterId, ItemStack item) {
-        String id = normalizeFilter(filterId);
-        if (id.equals("all")) {
+    public boolean matches(String filterId, Material material) {
+        State current = state;
+        String id = filterId == null ? "all" : filterId.toLowerCase(Locale.ROOT);
+        if (id.equals("all") || !current.rules().containsKey(id)) {
             return true;
         }
-
-        FilterRule rule = rules.get(id);
-        if (rule == null || item == null) {
-            return false;
-        }
-
-        if (rule.materials().contains(item.getType())) {
-            return true;
-        }
-
-        String materialName = item.getType().name().toLowerCase(Locale.ROOT);
-        for (String keyword : rule.contains()) {
-            if (materialName.contains(keyword)) {
-                return true;
-            }
-        }
-        return false;
+        int bit = current.table().bit(id);
+        return bit >= 0 && material != null && current.table().matches(bit, material);
     }
 }
@@ -2,13 +2,18 @@ package com.siberanka.donutauctions.gui;
 
 import com.siberanka.donutauctions.DonutAuctionsPlugin;
 import com.siberanka.donutauctions.auction.AuctionListing;
+import com.siberanka.donutauctions.auction.AuctionQuery;
 import com.siberanka.donutauctions.auction.AuctionService;
+import com.siberanka.donutauctions.auction.ListingPage;
+import com.siberanka.donutauctions.auction.MarketStats;
+import com.siberanka.donutauctions.auction.SortMode;
 import com.siberanka.donutauctions.auction.TransactionRecord;
 import com.siberanka.donutauctions.config.LanguageManager;
 import com.siberanka.donutauctions.filter.FilterManager;
 import com.siberanka.donutauctions.hook.EconomyHook;
 import com.siberanka.donutauctions.hook.UltimateShopHook;
 import com.siberanka.donutauctions.util.FormatUtil;
+import com.siberanka.donutauctions.util.SchedulerAdapter;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
@@ -22,9 +27,9 @@ import org.bukkit.persistence.PersistentDataType;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -47,7 +52,7 @@ public final class AuctionMenuService {
 
     private final ConcurrentMap<UUID, String> searchState = new ConcurrentHashMap<>();
     private final Set<UUID> waitingSearch = ConcurrentHashMap.newKeySet();
-    private final ConcurrentMap<UUID, String> sortState = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, SortMode> sortState = new ConcurrentHashMap<>();
     private final ConcurrentMap<UUID, String> filterState = new ConcurrentHashMap<>();
     private final ConcurrentMap<UUID, Long> clickThrottle = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Long> warnThrottle = new ConcurrentHashMap<>();
@@ -82,18 +87,13 @@ public final class AuctionMenuService {
         int size = lang.number("gui.auction.size", 54);
         List<Integer> itemSlots = parseSlots(lang.rawString("gui.auction.item-slots", "0-44"));
 
-        List<AuctionListing> source = new ArrayList<>(auctionService.activeListings(search));
         String filterMode = filterManager.normalizeFilter(filterState.getOrDefault(player.getUniqueId(), "all"));
         filterState.put(player.getUniqueId(), filterMode);
-        source = source.stream()
-                .filter(listing -> filterManager.matches(filterMode, listing.item()))
-                .collect(Collectors.toCollection(ArrayList::new));
+        SortMode sortMode = sortState.getOrDefault(player.getUniqueId(), SortMode.NEWEST);
 
-        String sortMode = sortState.getOrDefault(player.getUniqueId(), "newest");
-        applySort(source, sortMode);
-
-        int maxPage = Math.max(1, (int) Math.ceil(source.size() / (double) itemSlots.size()));
-        int currentPage = Math.max(1, Math.min(page, maxPage));
+        ListingPage result = auctionService.query(AuctionQuery.browse(search, filterMode, sortMode, page, itemSlots.size()));
+        int currentPage = result.page();
+        int maxPage = result.maxPage();
 
         Map<String, String> placeholders = new HashMap<>();
         placeholders.put("page", String.valueOf(currentPage));
@@ -104,14 +104,14 @@ public final class AuctionMenuService {
         placeControls(inventory, "gui.auction.controls", placeholders);
         decorateAuctionControls(inventory, player, sortMode, filterMode);
 
-        int from = (currentPage - 1) * itemSlots.size();
-        int to = Math.min(source.size(), from + itemSlots.size());
-        List<AuctionListing> pageEntries = source.subList(from, to);
+        List<AuctionListing> pageEntries = result.entries();
+        String window = auctionService.marketWindow().name().toLowerCase(Locale.ROOT);
+        String windowName = lang.rawString("gui.market-windows." + window, window);
 
         for (int i = 0; i < pageEntries.size(); i++) {
             AuctionListing listing = pageEntries.get(i);
-            ItemStack icon = listing.item().clone();
-            ItemMeta meta = icon.getItemMeta();
+            ItemStack icon = listing.itemStack();
+            ItemMeta meta = icon == null ? null : icon.getItemMeta();
             if (meta == null) {
                 continue;
             }
@@ -126,6 +126,16 @@ public final class AuctionMenuService {
             if (!lore.isEmpty()) {
                 lore.add(" ");
             }
+            Optional<MarketStats.Rate> rate = auctionService.marketRate(listing.item());
+            if (rate.isPresent()) {
+                lore.addAll(lang.textList("gui.auction.market-lore", Map.of(
+                        "window", windowName,
+                        "market_median", economy.format(rate.get().median()),
+                        "market_average", economy.format(rate.get().average()),
+                        "market_units", String.valueOf(rate.get().units()),
+                        "market_last", economy.format(rate.get().lastPrice())
+                )));
+            }
             if (listing.sellerUuid().equals(player.getUniqueId())) {
                 lore.addAll(lang.textList("gui.auction.own-listing-lore", itemMap));
             } else {
@@ -143,12 +153,11 @@ public final class AuctionMenuService {
     }
 
     public void openMyItems(Player player, int page) {
-        List<AuctionListing> mine = auctionService.myListings(player.getUniqueId());
-
         int size = lang.number("gui.my-items.size", 27);
         List<Integer> itemSlots = parseSlots(lang.rawString("gui.my-items.item-slots", "0-17"));
-        int maxPage = Math.max(1, (int) Math.ceil(mine.size() / (double) itemSlots.size()));
-        int currentPage = Math.max(1, Math.min(page, maxPage));
+        ListingPage result = auctionService.query(AuctionQuery.ofSeller(player.getUniqueId(), page, itemSlots.size()));
+        int currentPage = result.page();
+        int maxPage = result.maxPage();
 
         Map<String, String> placeholders = Map.of(
                 "page", String.valueOf(currentPage),
@@ -159,14 +168,12 @@ public final class AuctionMenuService {
         fillBackground(inventory, "gui.my-items.controls.filler");
         placeControls(inventory, "gui.my-items.controls", placeholders);
 
-        int from = (currentPage - 1) * itemSlots.size();
-        int to = Math.min(mine.size(), from + itemSlots.size());
-        List<AuctionListing> pageEntries = mine.subList(from, to);
+        List<AuctionListing> pageEntries = result.entries();
 
         for (int i = 0; i < pageEntries.size(); i++) {
             AuctionListing listing = pageEntries.get(i);
-            ItemStack icon = listing.item().clone();
-            ItemMeta meta = icon.getItemMeta();
+            ItemStack icon = listing.itemStack();
+            ItemMeta meta = icon == null ? null : icon.getItemMeta();
             if (meta == null) {
                 continue;
             }
@@ -192,11 +199,11 @@ public final class AuctionMenuService {
     }
 
     public void openTransactions(Player player, int page) {
-        List<TransactionRecord> tx = auctionService.transactionsFor(player.getUniqueId());
+        int total = auctionService.transactionCount(player.getUniqueId());
 
         int size = lang.number("gui.transactions.size", 54);
         List<Integer> itemSlots = parseSlots(lang.rawString("gui.transactions.item-slots", "0-44"));
-        int maxPage = Math.max(1, (int) Math.ceil(tx.size() / (double) itemSlots.size()));
+        int maxPage = Math.max(1, (int) Math.ceil(total / (double) itemSlots.size()));
         int currentPage = Math.max(1, Math.min(page, maxPage));
 
         Map<String, String> placeholders = Map.of(
@@ -209,8 +216,7 @@ public final class AuctionMenuService {
         placeControls(inventory, "gui.transactions.controls", placeholders);
 
         int from = (currentPage - 1) * itemSlots.size();
-        int to = Math.min(tx.size(), from + itemSlots.size());
-        List<TransactionRecord> pageEntries = tx.subList(from, to);
+        List<TransactionRecord> pageEntries = auctionService.transactionPage(player.getUniqueId(), from, itemSlots.size());
 
         for (int i = 0; i < pageEntries.size(); i++) {
             TransactionRecord record = pageEntries.get(i);
@@ -272,13 +278,19 @@ public final class AuctionMenuService {
 
             auctionService.get(listingId).ifPresent(listing -> {
                 if (listing.sellerUuid().equals(player.getUniqueId())) {
+                    ItemStack returned = listing.itemStack();
+                    if (returned == null) {
+                        warnRateLimited("undecodable-item", "Listing " + listing.id() + " has an undecodable item; removal refused.");
+                        player.sendMessage(lang.text("messages.try-again"));
+                        return;
+                    }
                     boolean removed = auctionService.removeOwnListing(listing.id(), player.getUniqueId(), UUID.randomUUID().toString());
                     if (!removed) {
                         player.sendMessage(lang.text("messages.try-again"));
                         return;
                     }
-                    giveOrDrop(player, listing.item().clone());
-                    player.sendMessage(lang.text("messages.listing-removed", Map.of("item", listing.item().getType().name())));
+                    giveOrDrop(player, returned);
+                    player.sendMessage(lang.text("messages.listing-removed", Map.of("item", listing.item().material().name())));
                     openAuction(player, holder.page());
                     return;
                 }
@@ -288,30 +300,20 @@ public final class AuctionMenuService {
                     return;
                 }
 
-                if (!economy.has(player, listing.price())) {
-                    player.sendMessage(lang.text("messages.not-enough-money"));
-                    return;
-                }
-
-                AuctionService.PurchaseResult result = auctionService.purchase(
+                // The balance is checked and charged on the settlement pool; the item is handed over
+                // back on the player's own thread.
+                auctionService.purchase(
                         listing.id(),
                         player,
                         economy,
                         player.getUniqueId() + ":" + listing.id() + ":" + System.nanoTime()
-                );
-                if (!result.success()) {
-                    player.sendMessage(lang.text(result.messageKey()));
-                    return;
-                }
-
-                AuctionListing bought = result.listing();
-                giveOrDrop(player, bought.item().clone());
-                plugin.ultimateShopHook().recordSale(bought.item());
-                player.sendMessage(lang.text("messages.listing-bought", Map.of(
-                        "item", bought.item().getType().name(),
-                        "price", economy.format(bought.price())
-                )));
-                openAuction(player, holder.page());
+                ).whenComplete((result, error) -> SchedulerAdapter.runForPlayer(plugin, player,
+                        () -> finishPurchase(player, holder, result, error),
+                        () -> {
+                            if (result != null && result.success()) {
+                                auctionService.holdForPickup(player.getUniqueId(), result.listing());
+                            }
+                        }));
             });
         } catch (Exception ex) {
             warnRateLimited("menu-click-ex", "Menu click failed safely: " + ex.getClass().getSimpleName());
@@ -322,6 +324,39 @@ public final class AuctionMenuService {
         return true;
     }
 
+    private void finishPurchase(Player player, AuctionMenuHolder holder, AuctionService.PurchaseResult result, Throwable error) {
+        if (error != null) {
+            warnRateLimited("purchase-ex", "Purchase failed safely: " + error.getClass().getSimpleName());
+            player.sendMessage(lang.text("messages.try-again"));
+            return;
+        }
+        if (!result.success()) {
+            player.sendMessage(lang.text(result.messageKey()));
+            return;
+        }
+
+        AuctionListing bought = result.listing();
+        ItemStack delivered = bought.itemStack();
+        if (delivered == null || !player.isOnline()) {
+            auctionService.holdForPickup(player.getUniqueId(), bought);
+            if (player.isOnline()) {
+                player.sendMessage(lang.text("messages.purchase-held", Map.of(
+                        "item", bought.item().material().name(),
+                        "price", economy.format(bought.price())
+                )));
+            }
+            return;
+        }
+        // addItem can merge the stack into a partial one and change its amount, so the shop is told first.
+        plugin.ultimateShopHook().recordSale(delivered.clone());
+        giveOrDrop(player, delivered);
+        player.sendMessage(lang.text("messages.listing-bought", Map.of(
+                "item", bought.item().material().name(),
+                "price", economy.format(bought.price())
+        )));
+        openAuction(player, holder.page());
+    }
+
     public void requestSearch(Player player) {
         waitingSearch.add(player.getUniqueId());
     }
@@ -415,23 +450,7 @@ public final class AuctionMenuService {
     }
 
     private void cycleSort(UUID player) {
-        String current = sortState.getOrDefault(player, "newest");
-        String next = switch (current) {
-            case "newest" -> "oldest";
-            case "oldest" -> "price_low";
-            case "price_low" -> "price_high";
-            default -> "newest";
-        };
-        sortState.put(player, next);
-    }
-
-    private void applySort(List<AuctionListing> list, String mode) {
-        switch (mode) {
-            case "oldest" -> list.sort(Comparator.comparing(AuctionListing::createdAt));
-            case "price_low" -> list.sort(Comparator.comparingDouble(AuctionListing::price));
-            case "price_high" -> list.sort(Comparator.comparingDouble(AuctionListing::price).reversed());
-            default -> list.sort(Comparator.comparing(AuctionListing::createdAt).reversed());
-        }
+        sortState.put(player, sortState.getOrDefault(player, SortMode.NEWEST).next());
     }
 
     private void openByType(Player player, MenuType type, int page) {
@@ -631,22 +650,22 @@ public final class AuctionMenuService {
         openMyItems(player, 1);
     }
 
-    private void decorateAuctionControls(Inventory inventory, Player player, String sortMode, String filterMode) {
+    private void decorateAuctionControls(Inventory inventory, Player player, SortMode sortMode, String filterMode) {
         int sortSlot = lang.number("gui.auction.controls.sort.slot", 48);
         int filterSlot = lang.number("gui.auction.controls.filter.slot", 47);
 
         if (sortSlot >= 0 && sortSlot < inventory.getSize()) {
             ItemStack sortItem = menuItem(
                     "gui.auction.controls.sort",
-                    Map.of("sort_name", lang.text("gui.sort-modes." + sortMode)),
+                    Map.of("sort_name", lang.text("gui.sort-modes." + sortMode.id())),
                     "sort"
             );
             ItemMeta meta = sortItem.getItemMeta();
             if (meta != null) {
                 List<String> lore = new ArrayList<>(meta.hasLore() ? meta.getLore() : List.of());
-                for (String mode : List.of("newest", "oldest", "price_low", "price_high")) {
-                    String key = mode.equals(sortMode) ? "gui.auction.sort-active-line" : "gui.auction.sort-inactive-line";
-                    lore.add(lang.text(key, Map.of("name", lang.text("gui.sort-modes." + mode))));
+                for (SortMode mode : SortMode.values()) {
+                    String key = mode == sortMode ? "gui.auction.sort-active-line" : "gui.auction.sort-inactive-line";
+                    lore.add(lang.text(key, Map.of("name", lang.text("gui.sort-modes." + mode.id()))));
                 }
                 meta.setLore(lore);
                 sortItem.setItemMeta(meta);
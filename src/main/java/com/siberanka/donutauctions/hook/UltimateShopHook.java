@@ -9,11 +9,16 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.plugin.Plugin;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.regex.Pattern;
 
@@ -21,12 +26,38 @@ public final class UltimateShopHook {
     private static final Pattern SAFE_MATERIAL = Pattern.compile("[^A-Z0-9_]");
     private static final Pattern BLOCKED_COMMAND_PATTERN = Pattern.compile("[\\r\\n`|&;]");
 
+    // The UltimateShop API as found on reload; a variant the installed version lacks is null.
+    private record ShopApi(
+            MethodHandle increaseSoldAmount,
+            MethodHandle sellPricesArray,
+            MethodHandle resultMap,
+            MethodHandle sellPrice,
+            MethodHandle sellPricesList
+    ) {
+        private static final ShopApi NONE = new ShopApi(null, null, null, null, null);
+    }
+
+    // GiveResult keys come in several classes; each one's public "type" field is looked up once.
+    private static final ClassValue<Optional<MethodHandle>> TYPE_FIELD = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            try {
+                Field field = type.getField("type");
+                field.setAccessible(true);
+                return Optional.of(MethodHandles.lookup().unreflectGetter(field));
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return Optional.empty();
+            }
+        }
+    };
+
     private final DonutAuctionsPlugin plugin;
     private boolean configuredEnabled;
     private boolean increaseDynamicSales;
     private double baseAuctionMultiplier;
     private boolean integrationAvailable;
     private Plugin hooked;
+    private volatile ShopApi api = ShopApi.NONE;
 
     public UltimateShopHook(DonutAuctionsPlugin plugin) {
         this.plugin = plugin;
@@ -40,6 +71,7 @@ public final class UltimateShopHook {
                 plugin.getConfig().getDouble("ultimateshop.base-auction-multiplier", 1.0D));
         hooked = Bukkit.getPluginManager().getPlugin("UltimateShop");
         integrationAvailable = configuredEnabled && hooked != null && hooked.isEnabled();
+        api = integrationAvailable ? resolveApi() : ShopApi.NONE;
     }
 
     public boolean isActive() {
@@ -60,6 +92,29 @@ public final class UltimateShopHook {
         return value > 0D ? OptionalDouble.of(value) : OptionalDouble.empty();
     }
 
+    // Prices many items against one online player; 0 where there is no price. getSellPrices sums
+    // every item it is given into a single result, so only identical units can share a lookup:
+    // items with the same type and meta are priced once per batch.
+    public double[] suggestAuctionPrices(List<ItemStack> items) {
+        double[] out = new double[items.size()];
+        org.bukkit.entity.Player anyPlayer = Bukkit.getOnlinePlayers().stream().findFirst().orElse(null);
+        if (anyPlayer == null) {
+            return out;
+        }
+        Map<ItemStack, Double> unitPrices = new HashMap<>();
+        for (int i = 0; i < out.length; i++) {
+            ItemStack item = items.get(i);
+            if (item == null || item.getType() == Material.AIR) {
+                continue;
+            }
+            ItemStack unitItem = item.clone();
+            unitItem.setAmount(1);
+            double unitSellPrice = unitPrices.computeIfAbsent(unitItem, unit -> unitSellPrice(unit, anyPlayer));
+            out[i] = Math.max(0D, recommendedAuctionPrice(item, unitSellPrice));
+        }
+        return out;
+    }
+
     public boolean isSellable(ItemStack item, org.bukkit.entity.Player player) {
         if (item == null || item.getType() == Material.AIR) {
             return false;
@@ -74,11 +129,17 @@ public final class UltimateShopHook {
             return 0D;
         }
 
-        int quantity = Math.max(1, item.getAmount());
         ItemStack unitItem = item.clone();
         unitItem.setAmount(1);
+        return recommendedAuctionPrice(item, unitSellPrice(unitItem, player));
+    }
+
+    private double unitSellPrice(ItemStack unitItem, org.bukkit.entity.Player player) {
+        return findSellPrice(unitItem, player).orElseGet(() -> fallbackMaterialSellPrice(unitItem.getType()));
+    }
 
-        double unitSellPrice = findSellPrice(unitItem, player).orElseGet(() -> fallbackMaterialSellPrice(unitItem.getType()));
+    private double recommendedAuctionPrice(ItemStack item, double unitSellPrice) {
+        int quantity = Math.max(1, item.getAmount());
         if (!Double.isFinite(unitSellPrice) || unitSellPrice <= 0D) {
             return 0D;
         }
@@ -117,17 +178,15 @@ public final class UltimateShopHook {
             return;
         }
 
-        try {
-            Class<?> clazz = loadShopHelperClass();
-            if (clazz == null) {
-                return;
-            }
-            Method method = findMethod(clazz, "increaseSoldAmount", ItemStack.class, int.class);
-            if (method != null) {
-                method.invoke(null, item, amount);
+        MethodHandle increaseSoldAmount = api.increaseSoldAmount();
+        if (increaseSoldAmount != null) {
+            try {
+                increaseSoldAmount.invoke(item, amount);
+            } catch (Error error) {
+                throw error;
+            } catch (Throwable ignored) {
+                // Soft dependency should never break plugin runtime.
             }
-        } catch (ReflectiveOperationException ignored) {
-            // Soft dependency should never break plugin runtime.
         }
 
         runDynamicSaleCommands(item.getType(), amount);
@@ -145,38 +204,33 @@ public final class UltimateShopHook {
             return OptionalDouble.empty();
         }
 
+        ShopApi current = api;
         try {
-            Class<?> clazz = loadShopHelperClass();
-            if (clazz == null) {
-                return OptionalDouble.empty();
-            }
-
             // UltimateShop 4.2.3+: getSellPrices(ItemStack[], Player, int) -> GiveResult
-            Method arrayMethod = findMethod(clazz, "getSellPrices", ItemStack[].class, org.bukkit.entity.Player.class, int.class);
-            if (arrayMethod != null) {
-                Object out = arrayMethod.invoke(null, new ItemStack[]{item.clone()}, player, 1);
-                OptionalDouble extracted = extractGiveResultPrice(out);
+            if (current.sellPricesArray() != null) {
+                Object out = current.sellPricesArray().invoke(new ItemStack[]{item.clone()}, player, 1);
+                OptionalDouble extracted = extractGiveResultPrice(current, out);
                 if (extracted.isPresent()) {
                     return extracted;
                 }
             }
 
-            Method singleMethod = findMethod(clazz, "getSellPrice", ItemStack.class, org.bukkit.entity.Player.class);
-            if (singleMethod != null) {
-                Object out = singleMethod.invoke(null, item, player);
+            if (current.sellPrice() != null) {
+                Object out = current.sellPrice().invoke(item, player);
                 if (out instanceof Number number) {
                     return OptionalDouble.of(number.doubleValue());
                 }
             }
 
-            Method listMethod = findMethod(clazz, "getSellPrices", List.class, org.bukkit.entity.Player.class, int.class);
-            if (listMethod != null) {
-                Object out = listMethod.invoke(null, List.of(item), player, 1);
+            if (current.sellPricesList() != null) {
+                Object out = current.sellPricesList().invoke(List.of(item), player, 1);
                 if (out instanceof Number number) {
                     return OptionalDouble.of(number.doubleValue());
                 }
             }
-        } catch (ReflectiveOperationException ignored) {
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable ignored) {
             return OptionalDouble.empty();
         }
 
@@ -198,12 +252,28 @@ public final class UltimateShopHook {
         return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
     }
 
-    private Method findMethod(Class<?> owner, String name, Class<?>... params) {
+    // Looks the API up once; the price path only ever invokes the handles found here.
+    private ShopApi resolveApi() {
+        Class<?> clazz = loadShopHelperClass();
+        if (clazz == null) {
+            return ShopApi.NONE;
+        }
+        MethodHandle sellPricesArray = findMethod(clazz, "getSellPrices", ItemStack[].class, org.bukkit.entity.Player.class, int.class);
+        return new ShopApi(
+                findMethod(clazz, "increaseSoldAmount", ItemStack.class, int.class),
+                sellPricesArray,
+                sellPricesArray == null ? null : findMethod(sellPricesArray.type().returnType(), "getResultMap"),
+                findMethod(clazz, "getSellPrice", ItemStack.class, org.bukkit.entity.Player.class),
+                findMethod(clazz, "getSellPrices", List.class, org.bukkit.entity.Player.class, int.class)
+        );
+    }
+
+    private MethodHandle findMethod(Class<?> owner, String name, Class<?>... params) {
         try {
             Method method = owner.getMethod(name, params);
             method.setAccessible(true);
-            return method;
-        } catch (NoSuchMethodException ex) {
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
             return null;
         }
     }
@@ -220,13 +290,12 @@ public final class UltimateShopHook {
         }
     }
 
-    private OptionalDouble extractGiveResultPrice(Object giveResult) {
-        if (giveResult == null) {
+    private OptionalDouble extractGiveResultPrice(ShopApi current, Object giveResult) {
+        if (giveResult == null || current.resultMap() == null) {
             return OptionalDouble.empty();
         }
         try {
-            Method getResultMap = giveResult.getClass().getMethod("getResultMap");
-            Object mapObj = getResultMap.invoke(giveResult);
+            Object mapObj = current.resultMap().invoke(giveResult);
             if (!(mapObj instanceof Map<?, ?> map) || map.isEmpty()) {
                 return OptionalDouble.empty();
             }
@@ -249,23 +318,20 @@ public final class UltimateShopHook {
                 fallbackTotal += amount;
 
                 // Prefer economy-like thing types when available.
-                if (key != null) {
-                    try {
-                        Object typeObj = key.getClass().getField("type").get(key);
-                        if (typeObj != null) {
-                            String typeName = String.valueOf(typeObj);
-                            if (typeName.contains("ECONOMY")) {
-                                economyTotal += amount;
-                            }
-                        }
-                    } catch (ReflectiveOperationException ignored) {
+                MethodHandle typeField = key == null ? null : TYPE_FIELD.get(key.getClass()).orElse(null);
+                if (typeField != null) {
+                    Object typeObj = typeField.invoke(key);
+                    if (typeObj != null && String.valueOf(typeObj).contains("ECONOMY")) {
+                        economyTotal += amount;
                     }
                 }
             }
 
             double chosen = economyTotal > 0D ? economyTotal : fallbackTotal;
             return chosen > 0D ? OptionalDouble.of(chosen) : OptionalDouble.empty();
-        } catch (ReflectiveOperationException ex) {
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable ex) {
             return OptionalDouble.empty();
         }
     }
@@ -31,10 +31,13 @@ public final class SearchInputListener implements Listener {
         event.setCancelled(true);
         String message = event.getMessage();
         if (message == null || message.isBlank()) {
-            SchedulerAdapter.runSync(plugin, () -> player.sendMessage(lang.text("messages.search-empty")));
+            SchedulerAdapter.runForPlayer(plugin, player, () -> player.sendMessage(lang.text("messages.search-empty")), () -> {
+            });
             return;
         }
 
-        SchedulerAdapter.runSync(plugin, () -> menuService.applySearchInput(player, message.trim()));
+        // Chat arrives off-thread; the menu is reopened on the player's own region.
+        SchedulerAdapter.runForPlayer(plugin, player, () -> menuService.applySearchInput(player, message.trim()), () -> {
+        });
     }
 }
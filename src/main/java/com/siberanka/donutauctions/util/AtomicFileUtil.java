@@ -1,11 +1,10 @@
 package com.siberanka.donutauctions.util;
 
-import org.bukkit.configuration.file.YamlConfiguration;
-
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -19,14 +18,19 @@ public final class AtomicFileUtil {
     private AtomicFileUtil() {
     }
 
-    public static void saveYamlAtomically(Path target, YamlConfiguration yaml) throws IOException {
+    @FunctionalInterface
+    public interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public static void writeAtomically(Path target, StreamWriter writer) throws IOException {
         Files.createDirectories(target.getParent());
         Path temp = target.resolveSibling(target.getFileName() + ".tmp");
-        String body = yaml.saveToString();
 
         try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
-            channel.write(ByteBuffer.wrap(bytes));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            writer.write(out);
+            out.flush();
             channel.force(true);
         }
 
@@ -0,0 +1,230 @@
+package com.siberanka.donutauctions.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+// Deduplicated backups: each generation is a manifest of content-defined chunks (gear rolling hash),
+// so a backup only writes the chunks that changed since the previous generation.
+public final class BackupStore {
+
+    public record Generation(long id, long createdAt, long length, String digest) {
+    }
+
+    private static final int MIN_CHUNK = 2 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024;
+    private static final long BOUNDARY_MASK = -1L << (64 - 13);
+    private static final long[] GEAR = gearTable();
+
+    private final Path root;
+    private final String baseName;
+
+    public BackupStore(Path root, String baseName) {
+        this.root = root;
+        this.baseName = baseName;
+    }
+
+    public synchronized void backup(Path source, int keep) throws IOException {
+        if (!Files.exists(source)) {
+            return;
+        }
+        Files.createDirectories(chunkRoot());
+        Files.createDirectories(manifestRoot());
+
+        List<String> chunks = new ArrayList<>();
+        MessageDigest whole = sha256();
+        long length = 0L;
+        try (InputStream in = Files.newInputStream(source)) {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream(MAX_CHUNK);
+            byte[] buffer = new byte[64 * 1024];
+            long hash = 0L;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                whole.update(buffer, 0, read);
+                length += read;
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+                    int size = chunk.size() + i - from + 1;
+                    if (size >= MAX_CHUNK || size >= MIN_CHUNK && (hash & BOUNDARY_MASK) == 0) {
+                        chunk.write(buffer, from, i - from + 1);
+                        chunks.add(storeChunk(chunk.toByteArray()));
+                        chunk.reset();
+                        hash = 0L;
+                        from = i + 1;
+                    }
+                }
+                chunk.write(buffer, from, read - from);
+            }
+            if (chunk.size() > 0) {
+                chunks.add(storeChunk(chunk.toByteArray()));
+            }
+        }
+
+        List<Generation> generations = readIndex();
+        long id = generations.isEmpty() ? 1L : generations.get(generations.size() - 1).id() + 1L;
+        Generation generation = new Generation(id, System.currentTimeMillis(), length, HexFormat.of().formatHex(whole.digest()));
+        byte[] manifest = String.join("\n", chunks).getBytes(StandardCharsets.UTF_8);
+        AtomicFileUtil.writeAtomically(manifestPath(id), out -> out.write(manifest));
+
+        generations.add(generation);
+        List<Generation> pruned = new ArrayList<>();
+        while (generations.size() > Math.max(keep, 1)) {
+            pruned.add(generations.remove(0));
+        }
+        writeIndex(generations);
+        if (!pruned.isEmpty()) {
+            collect(pruned, generations);
+        }
+    }
+
+    public synchronized Optional<Path> restoreLatest(Path target) {
+        List<Generation> generations;
+        try {
+            generations = readIndex();
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+        for (int i = generations.size() - 1; i >= 0; i--) {
+            Generation generation = generations.get(i);
+            try {
+                List<String> chunks = readManifest(generation.id());
+                MessageDigest digest = sha256();
+                long written = 0L;
+                Path temp = target.resolveSibling(target.getFileName() + ".restore");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    for (String hash : chunks) {
+                        byte[] data = Files.readAllBytes(chunkPath(hash));
+                        digest.update(data);
+                        out.write(data);
+                        written += data.length;
+                    }
+                }
+                if (written != generation.length() || !HexFormat.of().formatHex(digest.digest()).equals(generation.digest())) {
+                    Files.deleteIfExists(temp);
+                    continue;
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                return Optional.of(manifestPath(generation.id()));
+            } catch (IOException ignored) {
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void collect(List<Generation> pruned, List<Generation> retained) throws IOException {
+        Set<String> live = new HashSet<>();
+        for (Generation generation : retained) {
+            live.addAll(readManifest(generation.id()));
+        }
+        for (Generation generation : pruned) {
+            for (String hash : readManifest(generation.id())) {
+                if (live.add(hash)) {
+                    Files.deleteIfExists(chunkPath(hash));
+                }
+            }
+            Files.deleteIfExists(manifestPath(generation.id()));
+        }
+    }
+
+    private String storeChunk(byte[] data) throws IOException {
+        String hash = HexFormat.of().formatHex(sha256().digest(data));
+        Path path = chunkPath(hash);
+        if (!Files.exists(path)) {
+            AtomicFileUtil.writeAtomically(path, out -> out.write(data));
+        }
+        return hash;
+    }
+
+    private List<Generation> readIndex() throws IOException {
+        List<Generation> out = new ArrayList<>();
+        Path index = indexPath();
+        if (!Files.exists(index)) {
+            return out;
+        }
+        for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 4) {
+                continue;
+            }
+            try {
+                out.add(new Generation(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return out;
+    }
+
+    private void writeIndex(List<Generation> generations) throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (Generation generation : generations) {
+            body.append(generation.id()).append(' ')
+                    .append(generation.createdAt()).append(' ')
+                    .append(generation.length()).append(' ')
+                    .append(generation.digest()).append('\n');
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        AtomicFileUtil.writeAtomically(indexPath(), out -> out.write(bytes));
+    }
+
+    private List<String> readManifest(long id) throws IOException {
+        List<String> out = new ArrayList<>();
+        for (String line : Files.readAllLines(manifestPath(id), StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                out.add(line.trim());
+            }
+        }
+        return out;
+    }
+
+    private Path indexPath() {
+        return root.resolve(baseName + ".generations");
+    }
+
+    private Path manifestRoot() {
+        return root.resolve("manifests");
+    }
+
+    private Path manifestPath(long id) {
+        return manifestRoot().resolve(baseName + "." + id + ".manifest");
+    }
+
+    private Path chunkRoot() {
+        return root.resolve("chunks");
+    }
+
+    private Path chunkPath(String hash) {
+        return chunkRoot().resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static long[] gearTable() {
+        SplittableRandom random = new SplittableRandom(0x5EED_DA0C_7105L);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+}
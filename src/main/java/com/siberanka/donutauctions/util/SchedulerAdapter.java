@@ -1,24 +1,218 @@
 package com.siberanka.donutauctions.util;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+// Global, async, player-bound and location-bound tasks. Where the region schedulers exist (Folia,
+// recent Paper) work goes to the scheduler that owns it, so per-player work runs on that player's
+// region instead of the global tick; elsewhere everything falls back to the Bukkit scheduler. The
+// scheduler methods are looked up once, on first use, and kept as method handles. Delays and
+// periods are in ticks everywhere.
 public final class SchedulerAdapter {
 
+    // A delayed or repeating task, whichever scheduler ended up running it.
+    public static final class Task {
+
+        private final Object handle;
+
+        private Task(Object handle) {
+            this.handle = handle;
+        }
+
+        public void cancel() {
+            try {
+                if (handle instanceof BukkitTask bukkitTask) {
+                    bukkitTask.cancel();
+                } else if (handle != null) {
+                    Folia.HANDLES.cancel().invoke(handle);
+                }
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    private record Handles(
+            MethodHandle globalScheduler,
+            MethodHandle globalTimer,
+            MethodHandle asyncScheduler,
+            MethodHandle asyncNow,
+            MethodHandle asyncTimer,
+            MethodHandle regionScheduler,
+            MethodHandle regionTimer,
+            MethodHandle entityScheduler,
+            MethodHandle entityRun,
+            MethodHandle entityDelayed,
+            MethodHandle entityTimer,
+            MethodHandle cancel
+    ) {
+    }
+
+    // Null when the server has no region schedulers.
+    private static final class Folia {
+        private static final Handles HANDLES = resolve();
+    }
+
+    private interface Call {
+        Object run(Handles handles) throws Throwable;
+    }
+
+    private static final Object UNAVAILABLE = new Object();
+
     private SchedulerAdapter() {
     }
 
-    public static void runSync(Plugin plugin, Runnable runnable) {
-        try {
-            Method getGlobalRegionScheduler = Bukkit.getServer().getClass().getMethod("getGlobalRegionScheduler");
-            Object scheduler = getGlobalRegionScheduler.invoke(Bukkit.getServer());
-            Method execute = scheduler.getClass().getMethod("execute", Plugin.class, Runnable.class);
-            execute.invoke(scheduler, plugin, runnable);
+    public static Task runSyncTimer(Plugin plugin, Runnable runnable, long delayTicks, long periodTicks) {
+        Consumer<Object> consumer = ignored -> runnable.run();
+        Object task = folia(h -> h.globalTimer().invoke(h.globalScheduler().invoke(Bukkit.getServer()), plugin, consumer,
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks)));
+        return task != UNAVAILABLE ? new Task(task) : new Task(Bukkit.getScheduler().runTaskTimer(plugin, runnable, delayTicks, periodTicks));
+    }
+
+    public static void runAsync(Plugin plugin, Runnable runnable) {
+        Consumer<Object> consumer = ignored -> runnable.run();
+        if (folia(h -> h.asyncNow().invoke(h.asyncScheduler().invoke(Bukkit.getServer()), plugin, consumer)) == UNAVAILABLE) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, runnable);
+        }
+    }
+
+    public static Task runAsyncTimer(Plugin plugin, Runnable runnable, long delayTicks, long periodTicks) {
+        Consumer<Object> consumer = ignored -> runnable.run();
+        Object task = folia(h -> h.asyncTimer().invoke(h.asyncScheduler().invoke(Bukkit.getServer()), plugin, consumer,
+                millis(delayTicks), millis(periodTicks), TimeUnit.MILLISECONDS));
+        return task != UNAVAILABLE
+                ? new Task(task)
+                : new Task(Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, runnable, delayTicks, periodTicks));
+    }
+
+    // Runs on the thread that owns the player; retired runs instead when the player is gone before
+    // the task gets its turn.
+    public static void runForPlayer(Plugin plugin, Player player, Runnable task, Runnable retired) {
+        runForPlayerLater(plugin, player, task, retired, 0L);
+    }
+
+    public static void runForPlayerLater(Plugin plugin, Player player, Runnable task, Runnable retired, long delayTicks) {
+        Consumer<Object> consumer = ignored -> task.run();
+        Object scheduled = folia(h -> delayTicks <= 0L
+                ? h.entityRun().invoke(h.entityScheduler().invoke(player), plugin, consumer, retired)
+                : h.entityDelayed().invoke(h.entityScheduler().invoke(player), plugin, consumer, retired, delayTicks));
+        if (scheduled == null) {
+            // The entity scheduler refuses tasks for a player that already left.
+            retired.run();
+            return;
+        }
+        if (scheduled != UNAVAILABLE) {
             return;
-        } catch (ReflectiveOperationException ignored) {
         }
-        Bukkit.getScheduler().runTask(plugin, runnable);
+        Runnable guarded = () -> {
+            if (player.isOnline()) {
+                task.run();
+            } else {
+                retired.run();
+            }
+        };
+        if (delayTicks <= 0L) {
+            Bukkit.getScheduler().runTask(plugin, guarded);
+        } else {
+            Bukkit.getScheduler().runTaskLater(plugin, guarded, delayTicks);
+        }
+    }
+
+    // Repeats on the thread that owns the player until cancelled; once the player is gone the task
+    // stops and retired runs once.
+    public static Task runForPlayerTimer(Plugin plugin, Player player, Runnable task, Runnable retired, long delayTicks,
+                                         long periodTicks) {
+        Consumer<Object> consumer = ignored -> task.run();
+        Object scheduled = folia(h -> h.entityTimer().invoke(h.entityScheduler().invoke(player), plugin, consumer, retired,
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks)));
+        if (scheduled == null) {
+            retired.run();
+            return new Task(null);
+        }
+        if (scheduled != UNAVAILABLE) {
+            return new Task(scheduled);
+        }
+        BukkitTask[] self = new BukkitTask[1];
+        // The first run is at least a tick away, so self is always set by then.
+        self[0] = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            if (player.isOnline()) {
+                task.run();
+            } else {
+                self[0].cancel();
+                retired.run();
+            }
+        }, Math.max(1L, delayTicks), Math.max(1L, periodTicks));
+        return new Task(self[0]);
+    }
+
+    // Repeats on the thread that owns the region around location until cancelled.
+    public static Task runAtLocationTimer(Plugin plugin, Location location, Runnable runnable, long delayTicks, long periodTicks) {
+        Consumer<Object> consumer = ignored -> runnable.run();
+        Object scheduled = folia(h -> h.regionTimer().invoke(h.regionScheduler().invoke(Bukkit.getServer()), plugin, location, consumer,
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks)));
+        return scheduled != UNAVAILABLE
+                ? new Task(scheduled)
+                : new Task(Bukkit.getScheduler().runTaskTimer(plugin, runnable, delayTicks, periodTicks));
+    }
+
+    // What the region scheduler returned, or UNAVAILABLE when there is none or it refused the task.
+    private static Object folia(Call call) {
+        Handles handles = Folia.HANDLES;
+        if (handles == null) {
+            return UNAVAILABLE;
+        }
+        try {
+            return call.run(handles);
+        } catch (Throwable ignored) {
+            return UNAVAILABLE;
+        }
+    }
+
+    private static long millis(long ticks) {
+        return Math.max(50L, ticks * 50L);
+    }
+
+    private static Handles resolve() {
+        try {
+            String pkg = "io.papermc.paper.threadedregions.scheduler.";
+            Class<?> global = Class.forName(pkg + "GlobalRegionScheduler");
+            Class<?> async = Class.forName(pkg + "AsyncScheduler");
+            Class<?> region = Class.forName(pkg + "RegionScheduler");
+            Class<?> entity = Class.forName(pkg + "EntityScheduler");
+            Class<?> task = Class.forName(pkg + "ScheduledTask");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            return new Handles(
+                    lookup.findVirtual(Server.class, "getGlobalRegionScheduler", MethodType.methodType(global)),
+                    lookup.findVirtual(global, "runAtFixedRate",
+                            MethodType.methodType(task, Plugin.class, Consumer.class, long.class, long.class)),
+                    lookup.findVirtual(Server.class, "getAsyncScheduler", MethodType.methodType(async)),
+                    lookup.findVirtual(async, "runNow", MethodType.methodType(task, Plugin.class, Consumer.class)),
+                    lookup.findVirtual(async, "runAtFixedRate",
+                            MethodType.methodType(task, Plugin.class, Consumer.class, long.class, long.class, TimeUnit.class)),
+                    lookup.findVirtual(Server.class, "getRegionScheduler", MethodType.methodType(region)),
+                    lookup.findVirtual(region, "runAtFixedRate",
+                            MethodType.methodType(task, Plugin.class, Location.class, Consumer.class, long.class, long.class)),
+                    lookup.findVirtual(Entity.class, "getScheduler", MethodType.methodType(entity)),
+                    lookup.findVirtual(entity, "run",
+                            MethodType.methodType(task, Plugin.class, Consumer.class, Runnable.class)),
+                    lookup.findVirtual(entity, "runDelayed",
+                            MethodType.methodType(task, Plugin.class, Consumer.class, Runnable.class, long.class)),
+                    lookup.findVirtual(entity, "runAtFixedRate",
+                            MethodType.methodType(task, Plugin.class, Consumer.class, Runnable.class, long.class, long.class)),
+                    lookup.unreflect(task.getMethod("cancel"))
+            );
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
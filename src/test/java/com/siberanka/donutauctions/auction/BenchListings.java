@@ -0,0 +1,58 @@
+package com.siberanka.donutauctions.auction;
+
+import org.bukkit.Material;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.UUID;
+
+// Listings for the benchmarks, built from stored headers only so no server is needed.
+final class BenchListings {
+
+    private static final Material[] MATERIALS = {
+            Material.STONE,
+            Material.DIAMOND,
+            Material.DIAMOND_SWORD,
+            Material.GOLD_INGOT,
+            Material.EMERALD,
+            Material.BOOK,
+            Material.PAPER,
+            Material.CHEST
+    };
+
+    private BenchListings() {
+    }
+
+    static UUID seller(int index) {
+        return new UUID(0L, index);
+    }
+
+    static AuctionListing listing(int index, UUID seller) {
+        Material material = MATERIALS[index % MATERIALS.length];
+        StoredItem item = StoredItem.restore(new byte[0], new StoredItem.Header(
+                material,
+                1 + index % 64,
+                "",
+                material.name().toLowerCase(Locale.ROOT) + " " + index
+        ));
+        Instant created = Instant.ofEpochMilli(1_700_000_000_000L + index * 1000L);
+        return new AuctionListing(
+                new UUID(1L, index),
+                seller,
+                "seller-" + seller.getLeastSignificantBits(),
+                item,
+                10D + (index * 7919L) % 10_000L,
+                created,
+                created.plus(Duration.ofHours(48))
+        );
+    }
+
+    static ListingBook book(int listings, int sellers) {
+        ListingBook book = new ListingBook();
+        for (int i = 0; i < listings; i++) {
+            book.put(listing(i, seller(i % sellers)));
+        }
+        return book;
+    }
+}
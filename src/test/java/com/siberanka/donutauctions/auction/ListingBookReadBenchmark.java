@@ -0,0 +1,88 @@
+package com.siberanka.donutauctions.auction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Menu reads against the listing book: lock-free, and behind one shared monitor the way every
+// AuctionService read used to be. Run it at several thread counts (-t 1, -t 4, -t 8) to compare
+// how the two scale.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBookReadBenchmark {
+
+    @Param({"10000"})
+    public int listings;
+
+    @Param({"500"})
+    public int sellers;
+
+    private final Object monitor = new Object();
+    private ListingBook book;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int bound) {
+            next = (next + 1) % bound;
+            return next;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        book = BenchListings.book(listings, sellers);
+    }
+
+    @Benchmark
+    public ListingPage page(Cursor cursor) {
+        return book.page(SortMode.PRICE_LOW, null, null, cursor.next(20) * 45, 45);
+    }
+
+    @Benchmark
+    public ListingPage pageUnderMonitor(Cursor cursor) {
+        synchronized (monitor) {
+            return book.page(SortMode.PRICE_LOW, null, null, cursor.next(20) * 45, 45);
+        }
+    }
+
+    @Benchmark
+    public AuctionListing get(Cursor cursor) {
+        return book.get(new UUID(1L, cursor.next(listings)));
+    }
+
+    @Benchmark
+    public AuctionListing getUnderMonitor(Cursor cursor) {
+        synchronized (monitor) {
+            return book.get(new UUID(1L, cursor.next(listings)));
+        }
+    }
+
+    @Benchmark
+    public ListingPage sellerPage(Cursor cursor) {
+        return book.sellerPage(BenchListings.seller(cursor.next(sellers)), SortMode.NEWEST, 0, 45);
+    }
+
+    @Benchmark
+    public ListingPage sellerPageUnderMonitor(Cursor cursor) {
+        synchronized (monitor) {
+            return book.sellerPage(BenchListings.seller(cursor.next(sellers)), SortMode.NEWEST, 0, 45);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.siberanka.donutauctions.auction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Buyers on many threads purchasing different listings: a compare-and-set claim per listing versus
+// the single service monitor purchase() used to hold. The consumed CPU stands in for the economy
+// calls that ran inside that monitor; each thread walks its own stride of listings, so claims rarely collide.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ListingClaimBenchmark {
+
+    @Param({"10000"})
+    public int listings;
+
+    @Param({"0", "500"})
+    public long settleTokens;
+
+    private final Object monitor = new Object();
+    private ListingBook book;
+    private UUID[] ids;
+
+    @State(Scope.Thread)
+    public static class Buyer {
+        private int next;
+        private int stride;
+
+        @Setup
+        public void setup(ThreadParams params) {
+            next = params.getThreadIndex();
+            stride = params.getThreadCount();
+        }
+
+        UUID pick(UUID[] ids) {
+            next = (next + stride) % ids.length;
+            return ids[next];
+        }
+    }
+
+    @Setup
+    public void setup() {
+        book = BenchListings.book(listings, 500);
+        ids = new UUID[listings];
+        for (int i = 0; i < listings; i++) {
+            ids[i] = new UUID(1L, i);
+        }
+    }
+
+    @Benchmark
+    public boolean claim(Buyer buyer) {
+        UUID id = buyer.pick(ids);
+        if (!book.claim(id)) {
+            return false;
+        }
+        Blackhole.consumeCPU(settleTokens);
+        book.release(id);
+        return true;
+    }
+
+    @Benchmark
+    public boolean monitor(Buyer buyer) {
+        UUID id = buyer.pick(ids);
+        synchronized (monitor) {
+            if (book.state(id) != ListingState.ACTIVE) {
+                return false;
+            }
+            Blackhole.consumeCPU(settleTokens);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.siberanka.donutauctions.auction;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The stored bytes stand in for serialized items; the pricer reads the "meta" byte back out.
+class RepriceGroupingTest {
+
+    private static AuctionListing listing(int index, byte... bytes) {
+        // Same material, amount, enchantments and name: only the serialized meta tells them apart.
+        StoredItem item = StoredItem.restore(bytes, new StoredItem.Header(Material.PAPER, 1, "", ""));
+        Instant created = Instant.ofEpochMilli(1_700_000_000_000L);
+        return new AuctionListing(new UUID(1L, index), new UUID(0L, 1L), "seller", item, 10D, created,
+                created.plus(Duration.ofHours(48)));
+    }
+
+    @Test
+    void sameMaterialWithDifferentMetaIsPricedSeparately() {
+        AuctionListing plain = listing(1, (byte) 1);
+        AuctionListing custom = listing(2, (byte) 2);
+        AuctionListing plainAgain = listing(3, (byte) 1);
+        List<Integer> calls = new ArrayList<>();
+
+        Map<UUID, Double> prices = AuctionService.priceByItem(List.of(plain, custom, plainAgain), items -> {
+            calls.add(items.size());
+            double[] out = new double[items.size()];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = items.get(i).bytes()[0] * 100D;
+            }
+            return out;
+        });
+
+        assertEquals(100D, prices.get(plain.id()).doubleValue());
+        assertEquals(200D, prices.get(custom.id()).doubleValue());
+        assertEquals(100D, prices.get(plainAgain.id()).doubleValue());
+        // Identical items share one sample.
+        assertEquals(List.of(2), calls);
+    }
+
+    @Test
+    void distinctItemsArePricedInBatches() {
+        List<AuctionListing> book = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            book.add(listing(i, (byte) (i >> 8), (byte) i));
+        }
+        List<Integer> calls = new ArrayList<>();
+
+        Map<UUID, Double> prices = AuctionService.priceByItem(book, items -> {
+            calls.add(items.size());
+            return new double[items.size()];
+        });
+
+        assertEquals(600, prices.size());
+        assertEquals(List.of(256, 256, 88), calls);
+    }
+}
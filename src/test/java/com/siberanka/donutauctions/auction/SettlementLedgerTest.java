@@ -0,0 +1,173 @@
+package com.siberanka.donutauctions.auction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A crash is a fresh ledger loading whatever the previous one left on disk.
+class SettlementLedgerTest {
+
+    @TempDir
+    Path dir;
+
+    private SettlementLedger.Entry reserved() {
+        return new SettlementLedger.Entry(UUID.randomUUID(), UUID.randomUUID(), "buyer", UUID.randomUUID(), 250D,
+                SettlementLedger.Stage.RESERVED);
+    }
+
+    private SettlementLedger.Entry crash(Path file) throws IOException {
+        SettlementLedger restarted = new SettlementLedger(file);
+        restarted.load();
+        List<SettlementLedger.Entry> open = restarted.entries();
+        assertEquals(1, open.size());
+        return open.get(0);
+    }
+
+    @Test
+    void crashAfterPaidDeliversOnceThenOnlyCompletes() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry entry = reserved();
+        ledger.put(entry);
+        ledger.put(entry.advance(SettlementLedger.Stage.WITHDRAWN));
+        ledger.put(entry.advance(SettlementLedger.Stage.PAID));
+
+        SettlementLedger.Entry recovered = crash(file);
+        assertEquals(entry.advance(SettlementLedger.Stage.PAID), recovered);
+        assertEquals(SettlementLedger.Recovery.DELIVER_AND_COMPLETE, recovered.recovery(true));
+
+        // Startup put the item in reclaim and then crashed again before the sale reached storage.
+        SettlementLedger second = new SettlementLedger(file);
+        second.load();
+        second.put(recovered.advance(SettlementLedger.Stage.DELIVERED));
+
+        SettlementLedger.Entry again = crash(file);
+        assertEquals(SettlementLedger.Stage.DELIVERED, again.stage());
+        assertEquals(SettlementLedger.Recovery.COMPLETE, again.recovery(true));
+    }
+
+    @Test
+    void crashAfterDurableSaleForgetsTheEntry() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry entry = reserved();
+        ledger.put(entry.advance(SettlementLedger.Stage.PAID));
+
+        // The sale removed the listing from storage, but the entry was not removed in time.
+        assertEquals(SettlementLedger.Recovery.FORGET, crash(file).recovery(false));
+    }
+
+    @Test
+    void earlierStagesRefundOrForget() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry reserved = reserved();
+        SettlementLedger.Entry withdrawn = reserved();
+        ledger.put(reserved);
+        ledger.put(withdrawn);
+        ledger.put(withdrawn.advance(SettlementLedger.Stage.WITHDRAWN));
+
+        SettlementLedger restarted = new SettlementLedger(file);
+        restarted.load();
+        for (SettlementLedger.Entry entry : restarted.entries()) {
+            assertEquals(entry.listingId().equals(reserved.listingId())
+                    ? SettlementLedger.Recovery.FORGET
+                    : SettlementLedger.Recovery.REFUND, entry.recovery(true));
+        }
+        assertEquals(2, restarted.entries().size());
+    }
+
+    @Test
+    void removedEntriesStayGone() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry entry = reserved();
+        ledger.put(entry.advance(SettlementLedger.Stage.PAID));
+        ledger.remove(entry.listingId(), true);
+
+        SettlementLedger restarted = new SettlementLedger(file);
+        restarted.load();
+        assertTrue(restarted.entries().isEmpty());
+    }
+
+    @Test
+    void tornTailIsDropped() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry entry = reserved();
+        ledger.put(entry.advance(SettlementLedger.Stage.PAID));
+        ledger.close();
+        // A crash halfway through the next frame.
+        Files.write(file, new byte[]{0, 0, 0, 80, 1, 7, 7}, StandardOpenOption.APPEND);
+
+        SettlementLedger.Entry recovered = crash(file);
+        assertEquals(entry.advance(SettlementLedger.Stage.PAID), recovered);
+
+        // The reload dropped the torn bytes, so later appends are readable again.
+        SettlementLedger restarted = new SettlementLedger(file);
+        restarted.load();
+        restarted.put(recovered.advance(SettlementLedger.Stage.DELIVERED));
+        assertEquals(SettlementLedger.Stage.DELIVERED, crash(file).stage());
+    }
+
+    @Test
+    void compactionKeepsOnlyOpenEntries() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry open = reserved();
+        ledger.put(open);
+        for (int i = 0; i < 200; i++) {
+            SettlementLedger.Entry done = reserved();
+            ledger.put(done);
+            ledger.put(done.advance(SettlementLedger.Stage.PAID));
+            ledger.remove(done.listingId(), false);
+        }
+        long before = Files.size(file);
+        ledger.compact();
+        assertTrue(Files.size(file) < before);
+        ledger.put(open.advance(SettlementLedger.Stage.WITHDRAWN));
+
+        assertEquals(SettlementLedger.Recovery.REFUND, crash(file).recovery(true));
+    }
+
+    @Test
+    void failedRefundRemovalIsFinishedByCompaction() throws IOException {
+        Path file = dir.resolve("settlements.bin");
+        SettlementLedger ledger = new SettlementLedger(file);
+        ledger.load();
+        SettlementLedger.Entry entry = reserved().advance(SettlementLedger.Stage.WITHDRAWN);
+        ledger.put(entry);
+        // The log can no longer be written, as after a failed fsync.
+        ledger.close();
+
+        boolean failed = false;
+        try {
+            ledger.remove(entry.listingId(), true);
+        } catch (IOException expected) {
+            failed = true;
+        }
+        assertTrue(failed);
+        // Still on disk, so the caller must keep the listing held.
+        assertEquals(SettlementLedger.Recovery.REFUND, crash(file).recovery(true));
+
+        assertEquals(List.of(entry.listingId()), ledger.compact());
+        SettlementLedger restarted = new SettlementLedger(file);
+        restarted.load();
+        assertTrue(restarted.entries().isEmpty());
+    }
+}
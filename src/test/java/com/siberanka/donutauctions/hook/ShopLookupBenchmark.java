@@ -0,0 +1,119 @@
+package com.siberanka.donutauctions.hook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// One UltimateShop price lookup against a stand-in ShopHelper: looking the class, methods and the
+// result key's "type" field up on every call, as the hook used to, versus invoking method handles
+// bound once on reload with the field cached per key class.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShopLookupBenchmark {
+
+    private static final String SHOP_HELPER = ShopHelper.class.getName();
+
+    public static final class ShopHelper {
+
+        public static GiveResult getSellPrices(Object[] items, Object player, int multiplier) {
+            Map<Object, BigDecimal> result = new LinkedHashMap<>();
+            result.put(new Thing("ECONOMY"), BigDecimal.valueOf(12.5D * items.length * multiplier));
+            result.put(new Thing("ITEM"), BigDecimal.ONE);
+            return new GiveResult(result);
+        }
+    }
+
+    public static final class GiveResult {
+        private final Map<Object, BigDecimal> resultMap;
+
+        GiveResult(Map<Object, BigDecimal> resultMap) {
+            this.resultMap = resultMap;
+        }
+
+        public Map<Object, BigDecimal> getResultMap() {
+            return resultMap;
+        }
+    }
+
+    public static final class Thing {
+        public final String type;
+
+        Thing(String type) {
+            this.type = type;
+        }
+    }
+
+    private static final ClassValue<Optional<MethodHandle>> TYPE_FIELD = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            try {
+                return Optional.of(MethodHandles.lookup().unreflectGetter(type.getField("type")));
+            } catch (ReflectiveOperationException ex) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    private final Object item = new Object();
+    private final Object player = new Object();
+    private MethodHandle sellPrices;
+    private MethodHandle resultMap;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        sellPrices = lookup.unreflect(Class.forName(SHOP_HELPER).getMethod("getSellPrices", Object[].class, Object.class, int.class));
+        resultMap = lookup.unreflect(GiveResult.class.getMethod("getResultMap"));
+    }
+
+    @Benchmark
+    public double reflectPerCall() throws ReflectiveOperationException {
+        Method method = Class.forName(SHOP_HELPER).getMethod("getSellPrices", Object[].class, Object.class, int.class);
+        method.setAccessible(true);
+        Object out = method.invoke(null, new Object[]{item}, player, 1);
+        Object map = out.getClass().getMethod("getResultMap").invoke(out);
+        double economy = 0D;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) map).entrySet()) {
+            Field field = entry.getKey().getClass().getField("type");
+            if (String.valueOf(field.get(entry.getKey())).contains("ECONOMY")) {
+                economy += ((BigDecimal) entry.getValue()).doubleValue();
+            }
+        }
+        return economy;
+    }
+
+    @Benchmark
+    public double cachedHandles() throws Throwable {
+        Object out = sellPrices.invoke(new Object[]{item}, player, 1);
+        Object map = resultMap.invoke(out);
+        double economy = 0D;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) map).entrySet()) {
+            MethodHandle type = TYPE_FIELD.get(entry.getKey().getClass()).orElse(null);
+            if (type != null && String.valueOf(type.invoke(entry.getKey())).contains("ECONOMY")) {
+                economy += ((BigDecimal) entry.getValue()).doubleValue();
+            }
+        }
+        return economy;
+    }
+}